@@ -0,0 +1,372 @@
+package com.example.taskApi.reactive;
+
+import com.example.taskApi.reactive.dto.TagSummary;
+import com.example.taskApi.reactive.models.Tag;
+import com.example.taskApi.reactive.models.Task;
+import com.example.taskApi.reactive.repository.TagRepository;
+import com.example.taskApi.reactive.repository.TaskQueries;
+import com.example.taskApi.reactive.repository.TaskRepository;
+import com.example.taskApi.reactive.repository.TaskTypeRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.Sort;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * тот же контракт /api, что и у Controller MVC-версии, на WebFlux и R2DBC;
+ * списки отдаются потоком, строки читаются из базы по мере того, как клиент их забирает
+ */
+@CrossOrigin(origins = "http://localhost:8081")
+@RestController
+@RequestMapping("/api")
+public class ReactiveController {
+    static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+    static final int MAX_PAGE_SIZE = 1000;
+
+    @Autowired
+    TaskRepository taskRepository;
+    @Autowired
+    TaskQueries taskQueries;
+    @Autowired
+    TaskTypeRepository taskTypeRepository;
+    @Autowired
+    TagRepository tagRepository;
+
+    /**
+     * выводит список всех задач потоком; при заданных after или limit выводит одну страницу,
+     * курсор следующей страницы возвращается в заголовке X-Next-Cursor
+     *
+     * @param after id задачи, после которой начинается страница
+     * @param limit размер страницы
+     * @return список задач в json или ndjson
+     */
+    @GetMapping(value = "/tasks", produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    public Mono<ResponseEntity<Flux<Task>>> getAllTasks(@RequestParam(value = "after", required = false) Integer after,
+                                                        @RequestParam(value = "limit", required = false) Integer limit) {
+        if (after != null || limit != null) {
+            return getTasksPage(after == null ? 0 : after, limit == null ? MAX_PAGE_SIZE : limit);
+        }
+        return taskRepository.findAnyId()
+                .map(id -> ResponseEntity.ok(taskQueries.findAll()))
+                .defaultIfEmpty(ResponseEntity.noContent().build())
+                .onErrorResume(e -> Mono.just(ResponseEntity.internalServerError().build()));
+    }
+
+    /**
+     * выводит страницу задач с id больше заданного, упорядоченных по id
+     *
+     * @param after id задачи, после которой начинается страница
+     * @param limit размер страницы
+     * @return список задач в json
+     */
+    private Mono<ResponseEntity<Flux<Task>>> getTasksPage(int after, int limit) {
+        if (limit <= 0 || limit > MAX_PAGE_SIZE) {
+            return Mono.just(ResponseEntity.badRequest().build());
+        }
+        return taskQueries.findPage(after, limit).collectList()
+                .map(tasks -> {
+                    if (tasks.isEmpty()) {
+                        return ResponseEntity.noContent().<Flux<Task>>build();
+                    }
+                    ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+                    if (tasks.size() == limit) {
+                        response.header(NEXT_CURSOR_HEADER, String.valueOf(tasks.get(tasks.size() - 1).getId()));
+                    }
+                    return response.body(Flux.fromIterable(tasks));
+                })
+                .onErrorResume(e -> Mono.just(ResponseEntity.internalServerError().build()));
+    }
+
+    /**
+     * выгружает все задачи потоком с учетом обратного давления: следующая порция строк
+     * читается из базы, только когда клиент забрал предыдущую
+     *
+     * @return все задачи в json или ndjson
+     */
+    @GetMapping(value = "/tasks/export", produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    public Flux<Task> exportTasks() {
+        return taskQueries.findAll();
+    }
+
+    /**
+     * выводит задачи за указанный день с типом и тегом, по убыванию типа
+     *
+     * @param date дата в формате yyyy-MM-dd
+     * @return список задач в json
+     */
+    @GetMapping("/tasks/date")
+    public Mono<ResponseEntity<List<Task>>> getTasksByDate(
+            @RequestParam("date") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate date) {
+        return taskQueries.findByDateWithTypesSorted(date.atStartOfDay(), date.plusDays(1).atStartOfDay())
+                .collectList()
+                .map(tasks -> tasks.isEmpty()
+                        ? ResponseEntity.noContent().<List<Task>>build()
+                        : ResponseEntity.ok(tasks))
+                .onErrorResume(e -> Mono.just(ResponseEntity.internalServerError().build()));
+    }
+
+    /**
+     * выводит задачу по ее id
+     *
+     * @param id id задачи
+     * @return задача в json
+     */
+    @GetMapping("/tasks/{id}")
+    public Mono<ResponseEntity<Task>> getTaskById(@PathVariable("id") int id) {
+        return taskQueries.findById(id)
+                .map(ResponseEntity::ok)
+                .defaultIfEmpty(ResponseEntity.notFound().build());
+    }
+
+    /**
+     * создает новую задачу (без типа)
+     *
+     * @param task новая задача
+     * @return новая задача
+     */
+    @PostMapping("/tasks")
+    public Mono<ResponseEntity<Task>> createTask(@RequestBody Task task) {
+        if (!isValidTaskDate(task.getDate())) {
+            return Mono.just(ResponseEntity.badRequest().build());
+        }
+        return taskRepository.save(new Task(task.getName(), task.getDescription(), task.getDate()))
+                .map(task1 -> ResponseEntity.status(HttpStatus.CREATED).body(task1))
+                .onErrorResume(e -> Mono.just(ResponseEntity.internalServerError().build()));
+    }
+
+    /**
+     * проверяет дату задачи: она обязательна и не может быть больше текущей
+     *
+     * @param date дата задачи
+     * @return корректна ли дата
+     */
+    private static boolean isValidTaskDate(Date date) {
+        return date != null && !date.after(new Date());
+    }
+
+    /**
+     * обновляет данные задачи по ее id (без типа)
+     *
+     * @param id id задачи
+     * @param task задача с обновленными параметрами
+     * @return обновленная задача
+     */
+    @PutMapping("/tasks/{id}")
+    public Mono<ResponseEntity<Task>> updateTask(@PathVariable("id") int id, @RequestBody Task task) {
+        if (!isValidTaskDate(task.getDate())) {
+            return Mono.just(ResponseEntity.badRequest().build());
+        }
+        return taskRepository.findById(id)
+                .flatMap(task1 -> {
+                    task1.setName(task.getName());
+                    task1.setDescription(task.getDescription());
+                    task1.setDate(task.getDate());
+                    return taskRepository.save(task1);
+                })
+                .flatMap(saved -> taskQueries.findById(saved.getId()))
+                .map(ResponseEntity::ok)
+                .defaultIfEmpty(ResponseEntity.notFound().build())
+                .onErrorReturn(OptimisticLockingFailureException.class, ResponseEntity.status(HttpStatus.CONFLICT).build());
+    }
+
+    /**
+     * обновляет тип задачи по ее id и id типа
+     *
+     * @param id id задачи
+     * @param idType id типа
+     * @return обновленная задача
+     */
+    @PutMapping("/tasks/type/id/{id}")
+    public Mono<ResponseEntity<Task>> updateTaskTypeById(@PathVariable("id") int id, @RequestBody int idType) {
+        return Mono.zip(taskRepository.findById(id), taskTypeRepository.findById(idType))
+                .flatMap(found -> {
+                    Task task1 = found.getT1();
+                    task1.setType(found.getT2());
+                    return taskRepository.save(task1);
+                })
+                .map(ResponseEntity::ok)
+                .defaultIfEmpty(ResponseEntity.notFound().build())
+                .onErrorReturn(OptimisticLockingFailureException.class, ResponseEntity.status(HttpStatus.CONFLICT).build());
+    }
+
+    /**
+     * удаляет задачу по ее id
+     *
+     * @param id id задачи
+     * @return пустую страницу
+     */
+    @DeleteMapping("/tasks/{id}")
+    public Mono<ResponseEntity<Void>> deleteTask(@PathVariable("id") int id) {
+        return taskRepository.deleteById(id)
+                .then(Mono.just(ResponseEntity.noContent().<Void>build()))
+                .onErrorResume(e -> Mono.just(ResponseEntity.internalServerError().build()));
+    }
+
+    /**
+     * удаляет все задачи
+     *
+     * @return пустую страницу
+     */
+    @DeleteMapping("/tasks")
+    public Mono<ResponseEntity<Void>> deleteAllTasks() {
+        return taskRepository.deleteAll()
+                .then(Mono.just(ResponseEntity.noContent().<Void>build()))
+                .onErrorResume(e -> Mono.just(ResponseEntity.internalServerError().build()));
+    }
+
+    /**
+     * выводит список всех тегов с их задачами; задачи всех тегов читаются одним запросом
+     *
+     * @return список тегов в json
+     */
+    @GetMapping("/tags")
+    public Mono<ResponseEntity<List<Tag>>> getAllTags() {
+        return Mono.zip(tagRepository.findAll(Sort.by("id")).collectList(),
+                        taskQueries.findAllTagged().collectMultimap(Task::getTagId))
+                .map(found -> {
+                    List<Tag> tags = found.getT1();
+                    Map<Integer, Collection<Task>> tasksByTag = found.getT2();
+                    for (Tag tag : tags) {
+                        tag.setTasks(List.copyOf(tasksByTag.getOrDefault(tag.getId(), List.of())));
+                    }
+                    return tags.isEmpty()
+                            ? ResponseEntity.noContent().<List<Tag>>build()
+                            : ResponseEntity.ok(tags);
+                })
+                .onErrorResume(e -> Mono.just(ResponseEntity.internalServerError().build()));
+    }
+
+    /**
+     * выводит список всех тегов, у которых есть задача (без списков задач)
+     *
+     * @param withCounts выводить ли число задач каждого тега
+     * @return список тегов в json
+     */
+    @GetMapping("/tags/tasks")
+    public Mono<ResponseEntity<List<TagSummary>>> getTagsWithTasks(
+            @RequestParam(value = "withCounts", defaultValue = "false") boolean withCounts) {
+        return (withCounts ? tagRepository.findAllWithTaskCounts() : tagRepository.findAllWithTasks())
+                .collectList()
+                .map(tags -> tags.isEmpty()
+                        ? ResponseEntity.noContent().<List<TagSummary>>build()
+                        : ResponseEntity.ok(tags))
+                .onErrorResume(e -> Mono.just(ResponseEntity.internalServerError().build()));
+    }
+
+    /**
+     * выводит тег по его id; задачи приходят из базы уже отсортированными по убыванию типа
+     *
+     * @param id id тега
+     * @return тег в json
+     */
+    @GetMapping("/tags/{id}")
+    public Mono<ResponseEntity<Tag>> getTagById(@PathVariable("id") int id) {
+        return findTagWithTasks(id)
+                .map(ResponseEntity::ok)
+                .defaultIfEmpty(ResponseEntity.notFound().build());
+    }
+
+    private Mono<Tag> findTagWithTasks(int id) {
+        return tagRepository.findById(id)
+                .zipWith(taskQueries.findByTag(id).collectList(), (tag, tasks) -> {
+                    tag.setTasks(tasks);
+                    return tag;
+                });
+    }
+
+    /**
+     * создает новый тег
+     *
+     * @param tag новый тег
+     * @return новый тег
+     */
+    @PostMapping("/tags")
+    public Mono<ResponseEntity<Tag>> createTag(@RequestBody Tag tag) {
+        return tagRepository.save(new Tag(tag.getName()))
+                .map(tag1 -> ResponseEntity.status(HttpStatus.CREATED).body(tag1))
+                .onErrorResume(e -> Mono.just(ResponseEntity.internalServerError().build()));
+    }
+
+    /**
+     * обновляет имя тега по его id
+     *
+     * @param id id тега
+     * @param tag тег с обновленным именем
+     * @return обновленный тег
+     */
+    @PutMapping("/tags/{id}")
+    public Mono<ResponseEntity<Tag>> updateTag(@PathVariable("id") int id, @RequestBody Tag tag) {
+        return tagRepository.findById(id)
+                .flatMap(tag1 -> {
+                    tag1.setName(tag.getName());
+                    return tagRepository.save(tag1);
+                })
+                .flatMap(saved -> findTagWithTasks(saved.getId()))
+                .map(ResponseEntity::ok)
+                .defaultIfEmpty(ResponseEntity.notFound().build())
+                .onErrorReturn(OptimisticLockingFailureException.class, ResponseEntity.status(HttpStatus.CONFLICT).build());
+    }
+
+    /**
+     * присваивает тег задаче по его id и id задачи
+     *
+     * @param id id тега
+     * @param idTask id задачи
+     * @return обновленный тег
+     */
+    @PutMapping("/tags/task/{id}")
+    public Mono<ResponseEntity<Tag>> addTagToTask(@PathVariable("id") int id, @RequestBody int idTask) {
+        return tagRepository.existsById(id)
+                .filter(Boolean::booleanValue)
+                .flatMap(exists -> taskRepository.setTag(idTask, id))
+                .filter(updated -> updated > 0)
+                .flatMap(updated -> findTagWithTasks(id))
+                .map(ResponseEntity::ok)
+                .defaultIfEmpty(ResponseEntity.notFound().build());
+    }
+
+    /**
+     * удаляет тег у задачи по его id и id задачи
+     *
+     * @param id id тега
+     * @param idTask id задачи
+     * @return обновленный тег
+     */
+    @DeleteMapping("/tags/task/{id}")
+    public Mono<ResponseEntity<Tag>> removeTagFromTask(@PathVariable("id") int id, @RequestBody int idTask) {
+        return Mono.zip(tagRepository.existsById(id), taskRepository.findById(idTask))
+                .filter(found -> found.getT1())
+                .flatMap(found -> Integer.valueOf(id).equals(found.getT2().getTagId())
+                        ? taskRepository.setTag(idTask, null)
+                        : Mono.just(0))
+                .flatMap(updated -> findTagWithTasks(id))
+                .map(ResponseEntity::ok)
+                .defaultIfEmpty(ResponseEntity.notFound().build());
+    }
+
+    /**
+     * удаляет тег по его id вместе с его задачами
+     *
+     * @param id id тега
+     * @return пустую страницу
+     */
+    @DeleteMapping("/tags/{id}")
+    public Mono<ResponseEntity<Void>> deleteTag(@PathVariable("id") int id) {
+        return taskRepository.deleteByTagId(id)
+                .then(tagRepository.deleteById(id))
+                .then(Mono.just(ResponseEntity.noContent().<Void>build()))
+                .onErrorResume(e -> Mono.just(ResponseEntity.internalServerError().build()));
+    }
+}
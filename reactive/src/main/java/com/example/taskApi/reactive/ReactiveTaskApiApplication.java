@@ -0,0 +1,13 @@
+package com.example.taskApi.reactive;
+
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.SpringBootApplication;
+
+@SpringBootApplication
+public class ReactiveTaskApiApplication {
+
+	public static void main(String[] args) {
+		SpringApplication.run(ReactiveTaskApiApplication.class, args);
+	}
+
+}
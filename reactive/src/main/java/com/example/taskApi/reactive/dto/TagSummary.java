@@ -0,0 +1,14 @@
+package com.example.taskApi.reactive.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * тег без списка задач, с числом задач при необходимости
+ *
+ * @param id id тега
+ * @param name имя тега
+ * @param taskCount число задач тега, null если не запрашивалось
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record TagSummary(int id, String name, Long taskCount) {
+}
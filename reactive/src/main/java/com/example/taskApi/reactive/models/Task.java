@@ -0,0 +1,131 @@
+package com.example.taskApi.reactive.models;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.Transient;
+import org.springframework.data.annotation.Version;
+import org.springframework.data.relational.core.mapping.Column;
+import org.springframework.data.relational.core.mapping.Table;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Date;
+import java.util.Objects;
+
+/**
+ * задача; связи хранятся как id, тип для ответа заполняется запросами с join (TaskQueries),
+ * json совпадает с задачей MVC-версии
+ */
+@Table("task")
+public class Task {
+    @Id
+    private Integer id;
+    private String name;
+    private String description;
+    private LocalDateTime date;
+    @Column("id_task_type")
+    private Integer typeId;
+    @Column("id_tag")
+    @JsonIgnore
+    private Integer tagId;
+    @Column("updated_at")
+    @JsonIgnore
+    private LocalDateTime updatedAt;
+    @Version
+    @JsonIgnore
+    private Long version;
+    @Transient
+    private TaskType type;
+
+    public Task() {
+
+    }
+
+    public Task(String name, String description, Date date) {
+        this.name = name;
+        this.description = description;
+        setDate(date);
+    }
+
+    public Integer getId() {
+        return id;
+    }
+
+    public void setId(Integer id) {
+        this.id = id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    public void setDescription(String description) {
+        this.description = description;
+    }
+
+    /**
+     * дата в json как java.util.Date, как у MVC-версии; в базе хранится LocalDateTime,
+     * драйверы R2DBC не умеют кодировать Date
+     */
+    public Date getDate() {
+        return date == null ? null : Date.from(date.atZone(ZoneId.systemDefault()).toInstant());
+    }
+
+    public void setDate(Date date) {
+        this.date = date == null ? null : LocalDateTime.ofInstant(date.toInstant(), ZoneId.systemDefault());
+    }
+
+    public TaskType getType() {
+        return type;
+    }
+
+    public void setType(TaskType type) {
+        this.type = type;
+        this.typeId = type == null ? null : type.getId();
+    }
+
+    public Integer getTypeId() {
+        return typeId;
+    }
+
+    public Integer getTagId() {
+        return tagId;
+    }
+
+    public void setTagId(Integer tagId) {
+        this.tagId = tagId;
+    }
+
+    public LocalDateTime getUpdatedAt() {
+        return updatedAt;
+    }
+
+    public Long getVersion() {
+        return version;
+    }
+
+    public void setUpdatedAt(LocalDateTime updatedAt) {
+        this.updatedAt = updatedAt;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        Task task = (Task) o;
+        return Objects.equals(id, task.id);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(id);
+    }
+}
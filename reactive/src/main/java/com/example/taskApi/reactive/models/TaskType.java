@@ -0,0 +1,36 @@
+package com.example.taskApi.reactive.models;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.relational.core.mapping.Table;
+
+@Table("task_type")
+public class TaskType {
+    @Id
+    private Integer id;
+    private String name;
+
+    public TaskType() {
+
+    }
+
+    public TaskType(Integer id, String name) {
+        this.id = id;
+        this.name = name;
+    }
+
+    public Integer getId() {
+        return id;
+    }
+
+    public void setId(Integer id) {
+        this.id = id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+}
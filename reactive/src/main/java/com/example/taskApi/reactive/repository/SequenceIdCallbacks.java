@@ -0,0 +1,54 @@
+package com.example.taskApi.reactive.repository;
+
+import com.example.taskApi.reactive.models.Tag;
+import com.example.taskApi.reactive.models.Task;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.r2dbc.mapping.event.BeforeConvertCallback;
+import org.springframework.r2dbc.core.DatabaseClient;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDateTime;
+
+/**
+ * перед записью берет id новых задач и тегов из тех же последовательностей, что и MVC-версия,
+ * и обновляет updated_at; каждое значение nextval занято только одной стороной,
+ * поэтому с блоками по 50 id у Hibernate они не пересекаются
+ */
+@Configuration
+public class SequenceIdCallbacks {
+
+    @Bean
+    BeforeConvertCallback<Task> taskIdCallback(DatabaseClient databaseClient) {
+        return (task, table) -> {
+            task.setUpdatedAt(LocalDateTime.now());
+            if (task.getId() != null) {
+                return Mono.just(task);
+            }
+            return nextId(databaseClient, "task_seq").map(id -> {
+                task.setId(id);
+                return task;
+            });
+        };
+    }
+
+    @Bean
+    BeforeConvertCallback<Tag> tagIdCallback(DatabaseClient databaseClient) {
+        return (tag, table) -> {
+            tag.setUpdatedAt(LocalDateTime.now());
+            if (tag.getId() != null) {
+                return Mono.just(tag);
+            }
+            return nextId(databaseClient, "tag_seq").map(id -> {
+                tag.setId(id);
+                return tag;
+            });
+        };
+    }
+
+    private static Mono<Integer> nextId(DatabaseClient databaseClient, String sequence) {
+        return databaseClient.sql("SELECT nextval('" + sequence + "')")
+                .map(row -> row.get(0, Number.class).intValue())
+                .one();
+    }
+}
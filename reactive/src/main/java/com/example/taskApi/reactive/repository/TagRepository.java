@@ -0,0 +1,16 @@
+package com.example.taskApi.reactive.repository;
+
+import com.example.taskApi.reactive.dto.TagSummary;
+import com.example.taskApi.reactive.models.Tag;
+import org.springframework.data.r2dbc.repository.Query;
+import org.springframework.data.r2dbc.repository.R2dbcRepository;
+import reactor.core.publisher.Flux;
+
+public interface TagRepository extends R2dbcRepository<Tag, Integer> {
+    @Query("SELECT tg.id, tg.name FROM tag tg WHERE EXISTS (SELECT 1 FROM task t WHERE t.id_tag = tg.id) ORDER BY tg.id")
+    Flux<TagSummary> findAllWithTasks();
+
+    @Query("SELECT tg.id, tg.name, COUNT(t.id) AS task_count FROM tag tg JOIN task t ON t.id_tag = tg.id " +
+            "GROUP BY tg.id, tg.name ORDER BY tg.id")
+    Flux<TagSummary> findAllWithTaskCounts();
+}
@@ -0,0 +1,118 @@
+package com.example.taskApi.reactive.repository;
+
+import com.example.taskApi.reactive.models.Task;
+import com.example.taskApi.reactive.models.TaskType;
+import io.r2dbc.spi.Readable;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Date;
+
+/**
+ * чтение задач вместе с типом одним запросом с join;
+ * строки идут из базы порциями по taskapi.export.fetch-size по мере того, как клиент их забирает
+ */
+@Repository
+public class TaskQueries {
+    private static final String SELECT = "SELECT t.id, t.name, t.description, t.date, t.id_tag, " +
+            "tt.id AS type_id, tt.name AS type_name FROM task t ";
+    private static final String LEFT_JOIN_TYPE = "LEFT JOIN task_type tt ON t.id_task_type = tt.id ";
+
+    private final DatabaseClient databaseClient;
+    private final int fetchSize;
+
+    public TaskQueries(DatabaseClient databaseClient, @Value("${taskapi.export.fetch-size:1000}") int fetchSize) {
+        this.databaseClient = databaseClient;
+        this.fetchSize = fetchSize;
+    }
+
+    public Flux<Task> findAll() {
+        return databaseClient.sql(SELECT + LEFT_JOIN_TYPE + "ORDER BY t.id")
+                .filter(statement -> statement.fetchSize(fetchSize))
+                .map(TaskQueries::toTask)
+                .all();
+    }
+
+    /**
+     * страница задач с id больше заданного, упорядоченных по id
+     *
+     * @param after id задачи, после которой начинается страница
+     * @param limit размер страницы
+     * @return задачи страницы
+     */
+    public Flux<Task> findPage(int after, int limit) {
+        return databaseClient.sql(SELECT + LEFT_JOIN_TYPE + "WHERE t.id > :after ORDER BY t.id LIMIT :limit")
+                .bind("after", after)
+                .bind("limit", limit)
+                .map(TaskQueries::toTask)
+                .all();
+    }
+
+    public Mono<Task> findById(int id) {
+        return databaseClient.sql(SELECT + LEFT_JOIN_TYPE + "WHERE t.id = :id")
+                .bind("id", id)
+                .map(TaskQueries::toTask)
+                .one();
+    }
+
+    /**
+     * задачи с типом и тегом за интервал [start, end), по убыванию id типа
+     *
+     * @param start начало интервала
+     * @param end конец интервала (не включается)
+     * @return задачи за интервал
+     */
+    public Flux<Task> findByDateWithTypesSorted(LocalDateTime start, LocalDateTime end) {
+        return databaseClient.sql(SELECT + "JOIN task_type tt ON t.id_task_type = tt.id " +
+                        "WHERE t.id_tag IS NOT NULL AND t.date >= :start AND t.date < :end ORDER BY tt.id DESC")
+                .bind("start", start)
+                .bind("end", end)
+                .map(TaskQueries::toTask)
+                .all();
+    }
+
+    /**
+     * задачи тега по убыванию id типа, задачи без типа в конце
+     *
+     * @param tagId id тега
+     * @return задачи тега
+     */
+    public Flux<Task> findByTag(int tagId) {
+        return databaseClient.sql(SELECT + LEFT_JOIN_TYPE +
+                        "WHERE t.id_tag = :tagId ORDER BY t.id_task_type DESC NULLS LAST, t.id")
+                .bind("tagId", tagId)
+                .map(TaskQueries::toTask)
+                .all();
+    }
+
+    /**
+     * все задачи с тегом, сгруппированные по тегу и отсортированные внутри тега как в findByTag
+     *
+     * @return задачи с тегом
+     */
+    public Flux<Task> findAllTagged() {
+        return databaseClient.sql(SELECT + LEFT_JOIN_TYPE +
+                        "WHERE t.id_tag IS NOT NULL ORDER BY t.id_tag, t.id_task_type DESC NULLS LAST, t.id")
+                .filter(statement -> statement.fetchSize(fetchSize))
+                .map(TaskQueries::toTask)
+                .all();
+    }
+
+    private static Task toTask(Readable row) {
+        LocalDateTime date = row.get("date", LocalDateTime.class);
+        Task task = new Task(row.get("name", String.class), row.get("description", String.class),
+                date == null ? null : Date.from(date.atZone(ZoneId.systemDefault()).toInstant()));
+        task.setId(row.get("id", Integer.class));
+        task.setTagId(row.get("id_tag", Integer.class));
+        Integer typeId = row.get("type_id", Integer.class);
+        if (typeId != null) {
+            task.setType(new TaskType(typeId, row.get("type_name", String.class)));
+        }
+        return task;
+    }
+}
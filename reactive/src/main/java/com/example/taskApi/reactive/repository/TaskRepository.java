@@ -0,0 +1,32 @@
+package com.example.taskApi.reactive.repository;
+
+import com.example.taskApi.reactive.models.Task;
+import org.springframework.data.r2dbc.repository.Modifying;
+import org.springframework.data.r2dbc.repository.Query;
+import org.springframework.data.r2dbc.repository.R2dbcRepository;
+import reactor.core.publisher.Mono;
+
+public interface TaskRepository extends R2dbcRepository<Task, Integer> {
+    /**
+     * id любой задачи: дешевая проверка, что таблица не пуста, до начала потоковой выдачи
+     *
+     * @return id задачи или пусто
+     */
+    @Query("SELECT id FROM task LIMIT 1")
+    Mono<Integer> findAnyId();
+
+    /**
+     * присваивает или снимает тег задачи одним UPDATE
+     *
+     * @param id id задачи
+     * @param tagId id тега, null чтобы снять тег
+     * @return число измененных строк
+     */
+    @Modifying
+    @Query("UPDATE task SET id_tag = :tagId, updated_at = CURRENT_TIMESTAMP, version = version + 1 WHERE id = :id")
+    Mono<Integer> setTag(int id, Integer tagId);
+
+    @Modifying
+    @Query("DELETE FROM task WHERE id_tag = :tagId")
+    Mono<Integer> deleteByTagId(int tagId);
+}
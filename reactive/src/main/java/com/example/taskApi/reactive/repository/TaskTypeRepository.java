@@ -0,0 +1,7 @@
+package com.example.taskApi.reactive.repository;
+
+import com.example.taskApi.reactive.models.TaskType;
+import org.springframework.data.r2dbc.repository.R2dbcRepository;
+
+public interface TaskTypeRepository extends R2dbcRepository<TaskType, Integer> {
+}
@@ -0,0 +1,178 @@
+package com.example.taskApi.reactive;
+
+import com.example.taskApi.reactive.models.Tag;
+import com.example.taskApi.reactive.models.Task;
+import com.example.taskApi.reactive.models.TaskType;
+import com.example.taskApi.reactive.repository.TagRepository;
+import com.example.taskApi.reactive.repository.TaskRepository;
+import com.example.taskApi.reactive.repository.TaskTypeRepository;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+import java.time.LocalDate;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * тесты эндпоинтов реактивной версии на встроенной H2
+ */
+@SpringBootTest
+@AutoConfigureWebTestClient
+class ReactiveTaskApiApplicationTests {
+
+    @Autowired
+    private WebTestClient webTestClient;
+
+    @Autowired
+    private TaskRepository taskRepository;
+
+    @Autowired
+    private TagRepository tagRepository;
+
+    @Autowired
+    private TaskTypeRepository taskTypeRepository;
+
+    @Autowired
+    private DatabaseClient databaseClient;
+
+    @BeforeEach
+    void setUp() {
+        taskRepository.deleteAll().block();
+        tagRepository.deleteAll().block();
+        taskTypeRepository.deleteAll().block();
+    }
+
+    /**
+     * тестирует создание задачи, ее вывод по id и отказ для даты больше текущей
+     */
+    @Test
+    void testCreateAndGetTask() {
+        Task created = webTestClient.post().uri("/api/tasks").contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(new Task("имя", "описание", new Date()))
+                .exchange()
+                .expectStatus().isCreated()
+                .expectBody(Task.class).returnResult().getResponseBody();
+        Assertions.assertNotNull(created.getId());
+
+        webTestClient.get().uri("/api/tasks/{id}", created.getId())
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.name").isEqualTo("имя")
+                .jsonPath("$.tagId").doesNotExist();
+
+        webTestClient.post().uri("/api/tasks").contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(new Task("имя", "описание", new Date(System.currentTimeMillis() + 86_400_000L)))
+                .exchange()
+                .expectStatus().isBadRequest();
+        webTestClient.get().uri("/api/tasks/{id}", created.getId() + 1)
+                .exchange()
+                .expectStatus().isNotFound();
+    }
+
+    /**
+     * тестирует потоковый вывод всех задач в ndjson, страницы с курсором и пустой список
+     */
+    @Test
+    void testGetAllTasksStreamsAndPages() {
+        webTestClient.get().uri("/api/tasks")
+                .exchange()
+                .expectStatus().isNoContent();
+        for (int i = 0; i < 3; i++) {
+            taskRepository.save(new Task("имя" + i, "описание" + i, new Date())).block();
+        }
+
+        List<Task> all = webTestClient.get().uri("/api/tasks").accept(MediaType.APPLICATION_NDJSON)
+                .exchange()
+                .expectStatus().isOk()
+                .returnResult(Task.class).getResponseBody().collectList().block();
+        Assertions.assertEquals(3, all.size());
+
+        String cursor = webTestClient.get().uri("/api/tasks?limit=2")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody().jsonPath("$.size()").isEqualTo(2)
+                .returnResult().getResponseHeaders().getFirst(ReactiveController.NEXT_CURSOR_HEADER);
+        Assertions.assertEquals(String.valueOf(all.get(1).getId()), cursor);
+        webTestClient.get().uri("/api/tasks?limit=2&after=" + cursor)
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().doesNotExist(ReactiveController.NEXT_CURSOR_HEADER)
+                .expectBody().jsonPath("$.size()").isEqualTo(1);
+    }
+
+    /**
+     * тестирует присвоение типа и тега, вывод тега с задачами по убыванию типа и задач за день
+     */
+    @Test
+    void testTagsAndTypes() {
+        TaskType type1 = insertType(1, "тип1");
+        TaskType type2 = insertType(2, "тип2");
+        Tag tag = tagRepository.save(new Tag("тег")).block();
+        Task task1 = taskRepository.save(new Task("имя1", "описание1", new Date())).block();
+        Task task2 = taskRepository.save(new Task("имя2", "описание2", new Date())).block();
+
+        webTestClient.put().uri("/api/tasks/type/id/{id}", task1.getId()).contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(type1.getId())
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody().jsonPath("$.type.name").isEqualTo("тип1").jsonPath("$.typeId").isEqualTo(1);
+        webTestClient.put().uri("/api/tasks/type/id/{id}", task2.getId()).contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(type2.getId())
+                .exchange()
+                .expectStatus().isOk();
+        for (Task task : List.of(task1, task2)) {
+            webTestClient.put().uri("/api/tags/task/{id}", tag.getId()).contentType(MediaType.APPLICATION_JSON)
+                    .bodyValue(task.getId())
+                    .exchange()
+                    .expectStatus().isOk();
+        }
+
+        webTestClient.get().uri("/api/tags/{id}", tag.getId())
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.tasks.size()").isEqualTo(2)
+                .jsonPath("$.tasks[0].typeId").isEqualTo(2)
+                .jsonPath("$.tasks[1].typeId").isEqualTo(1);
+        webTestClient.get().uri("/api/tags/tasks?withCounts=true")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody().jsonPath("$[0].taskCount").isEqualTo(2);
+        webTestClient.get().uri("/api/tasks/date?date=" + LocalDate.now())
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody().jsonPath("$.size()").isEqualTo(2).jsonPath("$[0].type.id").isEqualTo(2);
+
+        webTestClient.method(HttpMethod.DELETE).uri("/api/tags/task/{id}", tag.getId())
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(task1.getId())
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody().jsonPath("$.tasks.size()").isEqualTo(1);
+
+        webTestClient.delete().uri("/api/tags/{id}", tag.getId())
+                .exchange()
+                .expectStatus().isNoContent();
+        Assertions.assertEquals(1L, taskRepository.count().block());
+        webTestClient.get().uri("/api/tags")
+                .exchange()
+                .expectStatus().isNoContent();
+    }
+
+    private TaskType insertType(int id, String name) {
+        databaseClient.sql("INSERT INTO task_type (id, name) VALUES (:id, :name)")
+                .bind("id", id)
+                .bind("name", name)
+                .then().block();
+        return new TaskType(id, name);
+    }
+}
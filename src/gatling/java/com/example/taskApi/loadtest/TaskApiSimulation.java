@@ -0,0 +1,103 @@
+package com.example.taskApi.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.gatling.javaapi.core.ScenarioBuilder;
+import io.gatling.javaapi.core.Simulation;
+import io.gatling.javaapi.http.HttpProtocolBuilder;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Stream;
+
+import static io.gatling.javaapi.core.CoreDsl.*;
+import static io.gatling.javaapi.http.HttpDsl.http;
+import static io.gatling.javaapi.http.HttpDsl.status;
+
+/**
+ * нагрузка на запущенное приложение для сравнения платформенных и виртуальных потоков
+ * (spring.threads.virtual.enabled): loadtest.users клиентов без пауз в течение loadtest.duration секунд
+ * читают задачи по id, страницы задач и меняют задачи (1 из 10 запросов).
+ * Перед запуском создается loadtest.tasks задач через /api/tasks/batch приложения loadtest.seedUrl
+ * (по умолчанию то же приложение; у реактивного варианта этого эндпоинта нет, и задачи создаются
+ * через MVC-приложение на той же базе)
+ */
+public class TaskApiSimulation extends Simulation {
+    private static final String BASE_URL = System.getProperty("loadtest.baseUrl", "http://localhost:8080");
+    private static final String SEED_URL = System.getProperty("loadtest.seedUrl", BASE_URL);
+    private static final int USERS = Integer.getInteger("loadtest.users", 1000);
+    private static final int RAMP = Integer.getInteger("loadtest.ramp", 10);
+    private static final int DURATION = Integer.getInteger("loadtest.duration", 60);
+    private static final int TASKS = Integer.getInteger("loadtest.tasks", 10000);
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+    private static final List<Integer> ids = new ArrayList<>();
+
+    private static final Iterator<Map<String, Object>> taskIds = Stream.generate(() -> Map.<String, Object>of(
+            "id", ids.get(ThreadLocalRandom.current().nextInt(ids.size())),
+            "day", LocalDate.now().minusDays(ThreadLocalRandom.current().nextInt(30)).toString())).iterator();
+
+    // без кэша Gatling: каждый запрос доходит до базы, а не заканчивается 304 по ETag
+    private final HttpProtocolBuilder httpProtocol = http.baseUrl(BASE_URL)
+            .disableCaching()
+            .acceptHeader("application/json")
+            .contentTypeHeader("application/json");
+
+    private final ScenarioBuilder scenario = scenario("tasks")
+            .during(Duration.ofSeconds(DURATION)).on(
+                    feed(taskIds),
+                    randomSwitch().on(
+                            percent(50.0).then(exec(http("get task").get("/api/tasks/#{id}")
+                                    .check(status().is(200)))),
+                            percent(40.0).then(exec(http("get page").get("/api/tasks?after=#{id}&limit=50")
+                                    .check(status().in(200, 204)))),
+                            percent(10.0).then(exec(http("update task").put("/api/tasks/#{id}")
+                                    .body(StringBody("{\"name\":\"имя #{id}\",\"description\":\"описание\"," +
+                                            "\"date\":\"#{day}\"}"))
+                                    .check(status().is(200)))))
+            );
+
+    {
+        setUp(scenario.injectOpen(rampUsers(USERS).during(RAMP))).protocols(httpProtocol);
+    }
+
+    @Override
+    public void before() {
+        try {
+            HttpClient client = HttpClient.newHttpClient();
+            StringBuilder body = new StringBuilder();
+            for (int i = 0; i < TASKS; i++) {
+                body.append(objectMapper.writeValueAsString(Map.of("name", "имя" + i,
+                        "description", "описание задачи " + i,
+                        "date", LocalDate.now().minusDays(i % 30).toString()))).append('\n');
+            }
+            client.send(HttpRequest.newBuilder(URI.create(SEED_URL + "/api/tasks/batch"))
+                    .header("Content-Type", "application/x-ndjson")
+                    .POST(HttpRequest.BodyPublishers.ofString(body.toString())).build(),
+                    HttpResponse.BodyHandlers.discarding());
+            HttpResponse<String> page = client.send(HttpRequest.newBuilder(
+                    URI.create(BASE_URL + "/api/tasks?limit=1000")).build(), HttpResponse.BodyHandlers.ofString());
+            for (JsonNode task : objectMapper.readTree(page.body())) {
+                ids.add(task.get("id").asInt());
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Seeding " + SEED_URL + " failed", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+        if (ids.isEmpty()) {
+            throw new IllegalStateException("No tasks at " + BASE_URL);
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package com.example.taskApi.benchmark;
+
+import com.example.taskApi.models.Task;
+import com.example.taskApi.models.TaskType;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * тестовые данные для бенчмарков
+ */
+final class BenchmarkData {
+    static final int TYPE_COUNT = 10;
+
+    private BenchmarkData() {
+    }
+
+    /**
+     * создает задачи со случайными типами из TYPE_COUNT общих типов
+     *
+     * @param size число задач
+     * @return список задач
+     */
+    static List<Task> tasks(int size) {
+        Random random = new Random(42);
+        List<TaskType> types = new ArrayList<>(TYPE_COUNT);
+        for (int i = 0; i < TYPE_COUNT; i++) {
+            TaskType type = new TaskType();
+            type.setId(i + 1);
+            type.setName("тип" + i);
+            types.add(type);
+        }
+        List<Task> tasks = new ArrayList<>(size);
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < size; i++) {
+            Task task = new Task("имя" + i, "описание задачи " + i, new Date(now - random.nextInt(1_000_000_000)));
+            task.setId(i + 1);
+            task.setType(types.get(random.nextInt(TYPE_COUNT)));
+            tasks.add(task);
+        }
+        return tasks;
+    }
+}
@@ -0,0 +1,52 @@
+package com.example.taskApi.benchmark;
+
+import com.example.taskApi.models.Tag;
+import com.example.taskApi.models.Task;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * сортировка задач тега по типу в памяти; перед каждым вызовом тег получает неотсортированную копию задач.
+ * boxedComparator - прежний Comparator.comparing(Task::getTypeId).reversed() для сравнения;
+ * выделение памяти на вызов видно с профилировщиком: -Djmh.args="TagSort -prof gc"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class TagSortBenchmark {
+    @Param({"1000", "100000", "1000000"})
+    int size;
+
+    private List<Task> tasks;
+    private Tag tag;
+
+    @Setup
+    public void setUp() {
+        tasks = BenchmarkData.tasks(size);
+        tag = new Tag("тег");
+    }
+
+    @Setup(Level.Invocation)
+    public void resetTasks() {
+        tag.setTasks(new ArrayList<>(tasks));
+    }
+
+    @Benchmark
+    public Tag sortTasksDesc() {
+        tag.sortTasksDesc();
+        return tag;
+    }
+
+    @Benchmark
+    public Tag boxedComparator() {
+        tag.getTasks().sort(Comparator.comparing(Task::getTypeId).reversed());
+        return tag;
+    }
+}
@@ -1,64 +1,310 @@
 package com.example.taskApi;
 
+import com.example.taskApi.dto.BatchResult;
+import com.example.taskApi.dto.BulkResult;
+import com.example.taskApi.dto.CacheStats;
+import com.example.taskApi.dto.DayCount;
+import com.example.taskApi.dto.DeleteResult;
+import com.example.taskApi.dto.TableVersion;
+import com.example.taskApi.dto.TagSummary;
+import com.example.taskApi.dto.TaskPatch;
+import com.example.taskApi.dto.TaskSearch;
+import com.example.taskApi.dto.TaskSearchHit;
+import com.example.taskApi.dto.TaskTotals;
+import com.example.taskApi.dto.TypeCount;
 import com.example.taskApi.models.Tag;
 import com.example.taskApi.models.Task;
-import com.example.taskApi.models.TaskType;
 import com.example.taskApi.repository.TagRepository;
+import com.example.taskApi.repository.TaskExportRepository;
 import com.example.taskApi.repository.TaskRepository;
 import com.example.taskApi.repository.TaskTypeRepository;
+import com.example.taskApi.service.ChangeEventPublisher;
+import com.example.taskApi.service.TagService;
+import com.example.taskApi.service.TaskAgenda;
+import com.example.taskApi.service.TaskBatchWriter;
+import com.example.taskApi.service.TaskService;
+import com.example.taskApi.service.TaskStats;
+import com.example.taskApi.service.TaskWriteBehind;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.caffeine.CaffeineCache;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.Sort;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.HandlerMapping;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.InputStream;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.function.IntSupplier;
+import java.util.function.Predicate;
 import java.util.zip.DataFormatException;
 
 @CrossOrigin(origins = "http://localhost:8081")
 @RestController
 @RequestMapping("/api")
 public class Controller {
+    static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+    static final int MAX_PAGE_SIZE = 1000;
+    static final int IN_CLAUSE_CHUNK = 1000;
+    static final String ERROR_COUNTER = "taskapi.errors";
+
+    private static final Logger log = LoggerFactory.getLogger(Controller.class);
+
     @Autowired
     TaskRepository taskRepository;
     @Autowired
+    TaskExportRepository taskExportRepository;
+    @Autowired
     TaskTypeRepository taskTypeRepository;
     @Autowired
     TagRepository tagRepository;
+    @Autowired
+    ObjectMapper objectMapper;
+    @Autowired
+    CacheManager cacheManager;
+    @Autowired
+    TaskBatchWriter taskBatchWriter;
+    @Autowired
+    ChangeEventPublisher changeEventPublisher;
+    @Autowired
+    MeterRegistry meterRegistry;
+    @Autowired
+    TaskWriteBehind taskWriteBehind;
+    @Autowired
+    TaskService taskService;
+    @Autowired
+    TagService tagService;
+    @Autowired
+    TaskAgenda taskAgenda;
+    @Autowired
+    TaskStats taskStats;
+    @Value("${taskapi.batch.chunk-size:1000}")
+    int batchChunkSize;
+    @Value("${taskapi.delete.chunk-size:5000}")
+    int deleteChunkSize;
+    @Value("${taskapi.stats.max-days:366}")
+    int statsMaxDays;
 
     /**
-     * выводит список всех задач
+     * выводит список всех задач; при заданных after или limit выводит одну страницу,
+     * курсор следующей страницы возвращается в заголовке X-Next-Cursor;
+     * полный список отдается с ETag и Last-Modified по версии таблиц задач и типов и 304, если он не менялся
      *
+     * @param after id задачи, после которой начинается страница
+     * @param limit размер страницы
+     * @param webRequest запрос с условными заголовками
      * @return список задач в json
      */
     @GetMapping("/tasks")
-    public ResponseEntity<List<Task>> getAllTasks() {
+    public ResponseEntity<List<Task>> getAllTasks(@RequestParam(value = "after", required = false) Integer after,
+                                                  @RequestParam(value = "limit", required = false) Integer limit,
+                                                  WebRequest webRequest) {
+        taskWriteBehind.flush();
+        if (after != null || limit != null) {
+            return getTasksPage(after == null ? 0 : after, limit == null ? MAX_PAGE_SIZE : limit);
+        }
         try {
-            List<Task> tasks = new ArrayList<>(taskRepository.findAll());
+            Optional<List<Task>> modified = taskService.findAllIfModified(notModified(webRequest));
+            if (modified.isEmpty()) {
+                return null;
+            }
+            List<Task> tasks = modified.get();
             if (tasks.isEmpty()) {
                 return new ResponseEntity<>(HttpStatus.NO_CONTENT);
             }
             return new ResponseEntity<>(tasks, HttpStatus.OK);
         } catch (Exception e) {
+            recordError(e);
             return new ResponseEntity<>(null, HttpStatus.INTERNAL_SERVER_ERROR);
         }
     }
 
     /**
-     * выводит список всех задач на заданную дату с сортировкой по приоритету
+     * выводит страницу задач с id больше заданного, упорядоченных по id
+     *
+     * @param after id задачи, после которой начинается страница
+     * @param limit размер страницы
+     * @return список задач в json
+     */
+    private ResponseEntity<List<Task>> getTasksPage(int after, int limit) {
+        if (limit <= 0 || limit > MAX_PAGE_SIZE) {
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        }
+        try {
+            List<Task> tasks = taskService.findPage(after, limit);
+            if (tasks.isEmpty()) {
+                return new ResponseEntity<>(HttpStatus.NO_CONTENT);
+            }
+            HttpHeaders headers = new HttpHeaders();
+            if (tasks.size() == limit) {
+                headers.set(NEXT_CURSOR_HEADER, String.valueOf(tasks.get(tasks.size() - 1).getId()));
+            }
+            return new ResponseEntity<>(tasks, headers, HttpStatus.OK);
+        } catch (Exception e) {
+            recordError(e);
+            return new ResponseEntity<>(null, HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    /**
+     * выгружает все задачи потоком, не загружая таблицу в память
+     *
+     * @return массив задач в json
+     */
+    @GetMapping(value = "/tasks/export", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> exportTasks() {
+        taskWriteBehind.flush();
+        StreamingResponseBody body = out -> {
+            try (JsonGenerator generator = objectMapper.createGenerator(out)) {
+                generator.writeStartArray();
+                taskExportRepository.writeAll(generator);
+                generator.writeEndArray();
+            }
+        };
+        return new ResponseEntity<>(body, HttpStatus.OK);
+    }
+
+    /**
+     * выводит список всех задач на заданную дату с сортировкой по приоритету из готового списка дня (TaskAgenda);
+     * дата передается параметром date, строка в теле запроса оставлена для старых клиентов
      *
+     * @param date дата в формате yyyy-MM-dd
+     * @param dateString дата в теле запроса
      * @return список задач в json
      */
     @GetMapping("/tasks/date")
-    public ResponseEntity<List<Task>> getTasksByDate(@RequestBody String dateString) {
+    public ResponseEntity<List<Task>> getTasksByDate(
+            @RequestParam(value = "date", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate date,
+            @RequestBody(required = false) String dateString) {
+        taskWriteBehind.flush();
+        if (date == null) {
+            if (dateString == null) {
+                return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+            }
+            try {
+                date = LocalDate.parse(dateString.replace("\"", "").trim());
+            } catch (DateTimeParseException e) {
+                return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+            }
+        }
+        try {
+            List<Task> tasks = taskAgenda.get(date);
+            if (tasks.isEmpty()) {
+                return new ResponseEntity<>(HttpStatus.NO_CONTENT);
+            }
+            return new ResponseEntity<>(tasks, HttpStatus.OK);
+        } catch (Exception e) {
+            recordError(e);
+            return new ResponseEntity<>(null, HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    /**
+     * ищет задачи по типу, тегу, началу имени и интервалу дат [from, to);
+     * выводит только поля из fields (id, name, description, date, typeId, typeName, tagId, tagName),
+     * сортировка задается параметрами sort=поле[,asc|desc].
+     * С параметром q ищет по имени и описанию полнотекстовым поиском PostgreSQL
+     * и выводит limit самых релевантных задач с оценкой rank, остальные параметры не учитываются
+     *
+     * @param q строка полнотекстового поиска
+     * @param typeId id типа
+     * @param tagId id тега
+     * @param name начало имени
+     * @param from начало интервала дат
+     * @param to конец интервала дат (не включается)
+     * @param fields выводимые поля
+     * @param limit максимальное число задач
+     * @param sort сортировка
+     * @return найденные задачи в json
+     */
+    @GetMapping("/tasks/search")
+    public ResponseEntity<List<Map<String, Object>>> searchTasks(
+            @RequestParam(value = "q", required = false) String q,
+            @RequestParam(value = "typeId", required = false) Integer typeId,
+            @RequestParam(value = "tagId", required = false) Integer tagId,
+            @RequestParam(value = "name", required = false) String name,
+            @RequestParam(value = "from", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(value = "to", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            @RequestParam(value = "fields", required = false) List<String> fields,
+            @RequestParam(value = "limit", defaultValue = "100") int limit,
+            Sort sort) {
+        if (limit <= 0 || limit > MAX_PAGE_SIZE) {
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        }
+        taskWriteBehind.flush();
+        if (q != null) {
+            return searchTasksFullText(q, limit);
+        }
+        try {
+            ZoneId zone = ZoneId.systemDefault();
+            List<Map<String, Object>> tasks = taskRepository.search(new TaskSearch(typeId, tagId, name,
+                    from == null ? null : Date.from(from.atStartOfDay(zone).toInstant()),
+                    to == null ? null : Date.from(to.atStartOfDay(zone).toInstant()),
+                    fields, sort, limit));
+            if (tasks.isEmpty()) {
+                return new ResponseEntity<>(HttpStatus.NO_CONTENT);
+            }
+            return new ResponseEntity<>(tasks, HttpStatus.OK);
+        } catch (IllegalArgumentException e) {
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        } catch (Exception e) {
+            recordError(e);
+            return new ResponseEntity<>(null, HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    /**
+     * ищет задачи полнотекстовым поиском по индексу GIN и сортирует по релевантности
+     *
+     * @param q строка поиска
+     * @param limit максимальное число задач
+     * @return найденные задачи в json
+     */
+    private ResponseEntity<List<Map<String, Object>>> searchTasksFullText(String q, int limit) {
+        if (q.isBlank()) {
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        }
         try {
-            dateString = dateString.replace("\"", "");
-            List<Task> tasks = new ArrayList<>(taskRepository.findByDateWithTypesSorted(dateString + " 00:00:00", dateString + " 23:59:59"));
+            List<Map<String, Object>> tasks = new ArrayList<>();
+            for (TaskSearchHit hit : taskRepository.searchFullText(q, limit)) {
+                Map<String, Object> task = new LinkedHashMap<>();
+                task.put("id", hit.getId());
+                task.put("name", hit.getName());
+                task.put("description", hit.getDescription());
+                task.put("date", hit.getDate());
+                task.put("typeId", hit.getTypeId());
+                task.put("rank", hit.getRank());
+                tasks.add(task);
+            }
             if (tasks.isEmpty()) {
                 return new ResponseEntity<>(HttpStatus.NO_CONTENT);
             }
             return new ResponseEntity<>(tasks, HttpStatus.OK);
         } catch (Exception e) {
+            recordError(e);
             return new ResponseEntity<>(null, HttpStatus.INTERNAL_SERVER_ERROR);
         }
     }
@@ -71,9 +317,16 @@ public class Controller {
      */
     @GetMapping("/tasks/{id}")
     public ResponseEntity<Task> getTaskById(@PathVariable("id") int id) {
-        Optional<Task> taskData = taskRepository.findById(id);
+        Optional<Task> pending = taskWriteBehind.find(id);
+        if (pending.isPresent()) {
+            // версия задачи с незаписанными изменениями неизвестна, поэтому без ETag
+            return ResponseEntity.ok().varyBy(HttpHeaders.ACCEPT).body(pending.get());
+        }
+        Optional<Task> taskData = taskService.findById(id);
         if (taskData.isPresent()) {
-            return new ResponseEntity<>(taskData.get(), HttpStatus.OK);
+            Task task = taskData.get();
+            // ETag версии один для json, Smile и CBOR и нужен как есть для If-Match, поэтому представление - по Vary
+            return ResponseEntity.ok().eTag(versionTag(task.getVersion())).varyBy(HttpHeaders.ACCEPT).body(task);
         } else {
             return new ResponseEntity<>(HttpStatus.NOT_FOUND);
         }
@@ -88,50 +341,231 @@ public class Controller {
     @PostMapping("/tasks")
     public ResponseEntity<Task> createTask(@RequestBody Task task) {
         try {
-            if(task.getDate().after(new Date())) {
-                throw new DataFormatException();
-            }
+            checkTaskDate(task.getDate());
             Task task1 = taskRepository
                     .save(new Task(task.getName(), task.getDescription(), task.getDate()));
+            // новая задача без типа и тега в списки дней TaskAgenda не попадает
+            changeEventPublisher.publish("task.created", task1);
             return new ResponseEntity<>(task1, HttpStatus.CREATED);
         } catch (DataFormatException e) {
             return new ResponseEntity<>(null, HttpStatus.BAD_REQUEST);
         } catch (Exception e1) {
+            recordError(e1);
             return new ResponseEntity<>(null, HttpStatus.INTERNAL_SERVER_ERROR);
         }
     }
 
     /**
-     * обновляет данные задачи по ее id (без типа)
+     * создает задачи пакетом (без типа) из json-массива или ndjson;
+     * пустые элементы и задачи с некорректной датой пропускаются и перечисляются в ответе,
+     * остальные сохраняются пачками по taskapi.batch.chunk-size; событие tasks.created публикуется
+     * по сохраненным пачкам и тогда, когда загрузка прервалась ошибкой
+     *
+     * @param body поток задач
+     * @return число сохраненных задач и ошибки по номерам элементов
+     */
+    @PostMapping(value = "/tasks/batch", consumes = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    public ResponseEntity<BatchResult> createTasks(InputStream body) {
+        List<BatchResult.BatchError> errors = new ArrayList<>();
+        List<Task> chunk = new ArrayList<>(batchChunkSize);
+        int accepted = 0;
+        int index = 0;
+        try (MappingIterator<Task> items = objectMapper.readerFor(Task.class).readValues(body)) {
+            while (items.hasNextValue()) {
+                Task task;
+                try {
+                    task = items.nextValue();
+                    if (task == null) {
+                        throw new DataFormatException("task is null");
+                    }
+                    checkTaskDate(task.getDate());
+                } catch (DataFormatException e) {
+                    errors.add(new BatchResult.BatchError(index++, e.getMessage()));
+                    continue;
+                } catch (JsonMappingException e) {
+                    errors.add(new BatchResult.BatchError(index++, e.getOriginalMessage()));
+                    continue;
+                }
+                index++;
+                chunk.add(new Task(task.getName(), task.getDescription(), task.getDate()));
+                if (chunk.size() == batchChunkSize) {
+                    taskBatchWriter.insertAll(chunk);
+                    accepted += chunk.size();
+                    chunk = new ArrayList<>(batchChunkSize);
+                }
+            }
+            if (!chunk.isEmpty()) {
+                taskBatchWriter.insertAll(chunk);
+                accepted += chunk.size();
+            }
+            return new ResponseEntity<>(new BatchResult(accepted, errors), HttpStatus.CREATED);
+        } catch (JsonProcessingException e) {
+            errors.add(new BatchResult.BatchError(index, e.getOriginalMessage()));
+            return new ResponseEntity<>(new BatchResult(accepted, errors), HttpStatus.BAD_REQUEST);
+        } catch (Exception e) {
+            recordError(e);
+            return new ResponseEntity<>(new BatchResult(accepted, errors), HttpStatus.INTERNAL_SERVER_ERROR);
+        } finally {
+            // сохраненные пачки уже закоммичены, даже если загрузка прервалась
+            if (accepted > 0) {
+                changeEventPublisher.publish("tasks.created", Map.of("count", accepted), accepted);
+            }
+        }
+    }
+
+    /**
+     * проверяет дату задачи: она обязательна и не может быть больше текущей
+     *
+     * @param date дата задачи
+     * @throws DataFormatException если дата некорректна
+     */
+    private static void checkTaskDate(Date date) throws DataFormatException {
+        if (date == null) {
+            throw new DataFormatException("date is required");
+        }
+        if (date.after(new Date())) {
+            throw new DataFormatException("date is in the future");
+        }
+    }
+
+    /**
+     * обновляет данные задачи по ее id (без типа);
+     * с заголовком If-Match задача меняется, только если ее версия совпадает с ETag из If-Match, иначе 412;
+     * если задачу успели изменить между чтением и записью, 412 при If-Match и 409 без него.
+     * При taskapi.write-behind.enabled запись без If-Match откладывается и сливается с другими изменениями задачи
      *
      * @param id id задачи
      * @param task задача с обновленными параметрами
+     * @param ifMatch ETag версии задачи, на которую рассчитано изменение
      * @return обновленная задача
      */
     @PutMapping("/tasks/{id}")
-    public ResponseEntity<Task> updateTask(@PathVariable("id") int id, @RequestBody Task task) {
+    public ResponseEntity<Task> updateTask(@PathVariable("id") int id, @RequestBody Task task,
+                                           @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
         try {
-            if(task.getDate().after(new Date())) {
-                throw new DataFormatException();
-            }
+            checkTaskDate(task.getDate());
         } catch (DataFormatException e) {
             return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
         }
+        if (taskWriteBehind.isEnabled()) {
+            if (ifMatch == null) {
+                try {
+                    return taskWriteBehind.update(id, task.getName(), task.getDescription(), task.getDate())
+                            .map(this::taskUpdated)
+                            .orElseGet(() -> new ResponseEntity<>(HttpStatus.NOT_FOUND));
+                } catch (OptimisticLockingFailureException e) {
+                    return new ResponseEntity<>(HttpStatus.CONFLICT);
+                }
+            }
+            // условное изменение проверяет версию в базе, поэтому отложенные изменения записываются до него
+            taskWriteBehind.flush();
+        }
 
-        Optional<Task> taskData = taskRepository.findById(id);
-        if (taskData.isPresent()) {
-            Task task1 = taskData.get();
-            task1.setName(task.getName());
-            task1.setDescription(task.getDescription());
-            task1.setDate(task.getDate());
-            return new ResponseEntity<>(taskRepository.save(task1), HttpStatus.OK);
+        Optional<Task> saved;
+        try {
+            saved = taskService.update(id, task.getName(), task.getDescription(), task.getDate(), parseVersion(ifMatch));
+        } catch (NumberFormatException e) {
+            return new ResponseEntity<>(HttpStatus.PRECONDITION_FAILED);
+        } catch (OptimisticLockingFailureException e) {
+            return new ResponseEntity<>(ifMatch == null ? HttpStatus.CONFLICT : HttpStatus.PRECONDITION_FAILED);
+        }
+        if (saved.isPresent()) {
+            taskAgenda.update(saved.get());
+            changeEventPublisher.publish("task.updated", saved.get());
+            return ResponseEntity.ok().eTag(versionTag(saved.get().getVersion())).body(saved.get());
         } else {
             return new ResponseEntity<>(HttpStatus.NOT_FOUND);
         }
     }
 
     /**
-     * обновляет тип задачи по ее id и id типа
+     * меняет только переданные поля задачи одним условным UPDATE, без чтения задачи;
+     * с заголовком If-Match задача меняется, только если ее версия совпадает, иначе 412.
+     * Отложенные изменения задачи (taskapi.write-behind.enabled) записываются перед изменением
+     *
+     * @param id id задачи
+     * @param patch изменяемые поля, null - поле не меняется
+     * @param ifMatch ETag версии задачи, на которую рассчитано изменение
+     * @return 204 и ETag новой версии, если она известна из If-Match
+     */
+    @PatchMapping("/tasks/{id}")
+    public ResponseEntity<Void> patchTask(@PathVariable("id") int id, @RequestBody TaskPatch patch,
+                                          @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        if (patch.isEmpty()) {
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        }
+        try {
+            if (patch.date() != null) {
+                checkTaskDate(patch.date());
+            }
+        } catch (DataFormatException e) {
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        }
+        Long expectedVersion;
+        try {
+            expectedVersion = parseVersion(ifMatch);
+        } catch (NumberFormatException e) {
+            return new ResponseEntity<>(HttpStatus.PRECONDITION_FAILED);
+        }
+        if (patch.typeId() != null && taskTypeRepository.findById(patch.typeId()).isEmpty()) {
+            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+        }
+        taskWriteBehind.flush();
+        try {
+            if (taskRepository.patch(id, patch, expectedVersion) == 0) {
+                // строка не изменилась: либо задачи нет, либо версия устарела; выясняем только в этом случае
+                return new ResponseEntity<>(taskRepository.existsById(id)
+                        ? HttpStatus.PRECONDITION_FAILED : HttpStatus.NOT_FOUND);
+            }
+        } catch (Exception e) {
+            recordError(e);
+            return new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+        taskAgenda.patched(id, patch);
+        changeEventPublisher.publish("task.patched", Map.of("id", id));
+        ResponseEntity.HeadersBuilder<?> response = ResponseEntity.noContent();
+        if (expectedVersion != null) {
+            response.eTag(versionTag(expectedVersion + 1));
+        }
+        return response.build();
+    }
+
+    /**
+     * ETag версии сущности
+     *
+     * @param version версия
+     * @return версия в кавычках
+     */
+    static String versionTag(long version) {
+        return "\"" + version + "\"";
+    }
+
+    /**
+     * разбирает версию из заголовка If-Match
+     *
+     * @param ifMatch заголовок If-Match
+     * @return версия или null, если заголовка нет или он равен *
+     * @throws NumberFormatException если в заголовке не версия
+     */
+    static Long parseVersion(String ifMatch) {
+        if (ifMatch == null) {
+            return null;
+        }
+        String tag = ifMatch.trim();
+        if (tag.equals("*")) {
+            return null;
+        }
+        if (tag.startsWith("W/")) {
+            tag = tag.substring(2);
+        }
+        if (tag.length() >= 2 && tag.startsWith("\"") && tag.endsWith("\"")) {
+            tag = tag.substring(1, tag.length() - 1);
+        }
+        return Long.parseLong(tag);
+    }
+
+    /**
+     * обновляет тип задачи по ее id и id типа; при taskapi.write-behind.enabled запись откладывается
      *
      * @param id id задачи
      * @param idType id типа
@@ -139,19 +573,43 @@ public class Controller {
      */
     @PutMapping("/tasks/type/id/{id}")
     public ResponseEntity<Task> updateTaskTypeById(@PathVariable("id") int id, @RequestBody int idType) {
-        Optional<Task> taskData = taskRepository.findById(id);
-        Optional<TaskType> taskType = taskTypeRepository.findById(idType);
-
-        if (taskData.isPresent() && taskType.isPresent()) {
-            Task task1 = taskData.get();
-            TaskType type1 = taskType.get();
-            task1.setType(type1);
-            return new ResponseEntity<>(taskRepository.save(task1), HttpStatus.OK);
+        if (taskWriteBehind.isEnabled()) {
+            try {
+                return taskTypeRepository.findById(idType)
+                        .flatMap(type -> taskWriteBehind.updateType(id, type))
+                        .map(this::taskUpdated)
+                        .orElseGet(() -> new ResponseEntity<>(HttpStatus.NOT_FOUND));
+            } catch (OptimisticLockingFailureException e) {
+                return new ResponseEntity<>(HttpStatus.CONFLICT);
+            }
+        }
+        Optional<Task> saved;
+        try {
+            saved = taskService.updateType(id, idType);
+        } catch (OptimisticLockingFailureException e) {
+            return new ResponseEntity<>(HttpStatus.CONFLICT);
+        }
+        if (saved.isPresent()) {
+            taskAgenda.update(saved.get());
+            changeEventPublisher.publish("task.updated", saved.get());
+            return ResponseEntity.ok().eTag(versionTag(saved.get().getVersion())).body(saved.get());
         } else {
             return new ResponseEntity<>(HttpStatus.NOT_FOUND);
         }
     }
 
+    /**
+     * публикует событие изменения задачи, принятого отложенной записью
+     *
+     * @param task задача с изменениями
+     * @return задача с изменениями
+     */
+    private ResponseEntity<Task> taskUpdated(Task task) {
+        taskAgenda.update(task);
+        changeEventPublisher.publish("task.updated", task);
+        return new ResponseEntity<>(task, HttpStatus.OK);
+    }
+
     /**
      * обновляет тип задачи по ее id и имени типа
      *
@@ -182,81 +640,181 @@ public class Controller {
     @DeleteMapping("/tasks/{id}")
     public ResponseEntity<HttpStatus> deleteTask(@PathVariable("id") int id) {
         try {
+            taskWriteBehind.discard(id);
             taskRepository.deleteById(id);
+            taskAgenda.remove(id);
+            changeEventPublisher.publish("task.deleted", Map.of("id", id));
             return new ResponseEntity<>(HttpStatus.NO_CONTENT);
         } catch (Exception e) {
+            recordError(e);
             return new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
         }
     }
 
     /**
-     * удаляет все задачи
+     * удаляет все задачи пачками по taskapi.delete.chunk-size строк, каждая пачка в своей транзакции
      *
      * @return пустую страницу
      */
     @DeleteMapping("/tasks")
     public ResponseEntity<HttpStatus> deleteAllTasks() {
         try {
-            taskRepository.deleteAll();
+            taskWriteBehind.flush();
+            long deleted = deleteInChunks(() -> taskRepository.deleteChunk(deleteChunkSize));
+            taskAgenda.clear();
+            changeEventPublisher.publish("tasks.deleted", Map.of("count", deleted), deleted);
             return new ResponseEntity<>(HttpStatus.NO_CONTENT);
         } catch (Exception e) {
+            recordError(e);
             return new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
         }
 
     }
 
     /**
-     * выводит список всех тегов
+     * удаляет задачи по интервалу дат [from, to) и/или типу пачками по taskapi.delete.chunk-size строк
+     *
+     * @param from начало интервала дат
+     * @param to конец интервала дат (не включается)
+     * @param typeId id типа
+     * @return число удаленных задач
+     */
+    @DeleteMapping("/tasks/bulk")
+    public ResponseEntity<DeleteResult> deleteTasksByFilter(
+            @RequestParam(value = "from", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(value = "to", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            @RequestParam(value = "typeId", required = false) Integer typeId) {
+        if (from == null && to == null && typeId == null) {
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        }
+        try {
+            ZoneId zone = ZoneId.systemDefault();
+            Date fromDate = from == null ? null : Date.from(from.atStartOfDay(zone).toInstant());
+            Date toDate = to == null ? null : Date.from(to.atStartOfDay(zone).toInstant());
+            taskWriteBehind.flush();
+            long deleted = deleteInChunks(() -> taskRepository.deleteChunkByFilter(fromDate, toDate, typeId, deleteChunkSize));
+            taskAgenda.clear();
+            changeEventPublisher.publish("tasks.deleted", Map.of("count", deleted), deleted);
+            return new ResponseEntity<>(new DeleteResult(deleted), HttpStatus.OK);
+        } catch (Exception e) {
+            recordError(e);
+            return new ResponseEntity<>(null, HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    /**
+     * проверка версии таблиц по If-None-Match и If-Modified-Since; при совпадении
+     * выставляет ответ 304, иначе добавляет в ответ ETag и Last-Modified.
+     * ETag один для json, Smile и CBOR, поэтому и ответ 200, и 304 помечаются Vary: Accept,
+     * чтобы кэш не отдал одно представление на запрос другого
+     *
+     * @param webRequest запрос с условными заголовками
+     * @return проверка версии
+     */
+    private static Predicate<TableVersion> notModified(WebRequest webRequest) {
+        if (webRequest instanceof ServletWebRequest servletWebRequest && servletWebRequest.getResponse() != null) {
+            servletWebRequest.getResponse().addHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT);
+        }
+        return version -> webRequest.checkNotModified(TableVersion.etag(version), TableVersion.lastModifiedMillis(version));
+    }
+
+    /**
+     * учитывает ошибку, превращенную в ответ 500: счетчик taskapi.errors по типу исключения
+     * и шаблону адреса запроса, и запись в лог со стеком
      *
+     * @param e исключение
+     */
+    private void recordError(Exception e) {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        Object pattern = attributes == null ? null
+                : attributes.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST);
+        String uri = pattern == null ? "UNKNOWN" : pattern.toString();
+        meterRegistry.counter(ERROR_COUNTER, "exception", e.getClass().getSimpleName(), "uri", uri).increment();
+        log.error("Request to {} failed", uri, e);
+    }
+
+    /**
+     * повторяет удаление пачки, пока пачка заполняется целиком
+     *
+     * @param chunkDelete удаление одной пачки, возвращает число удаленных строк
+     * @return общее число удаленных строк
+     */
+    private long deleteInChunks(IntSupplier chunkDelete) {
+        long total = 0;
+        int deleted;
+        do {
+            deleted = chunkDelete.getAsInt();
+            total += deleted;
+        } while (deleted >= deleteChunkSize);
+        return total;
+    }
+
+    /**
+     * выводит список всех тегов; ETag и Last-Modified строятся по версии таблиц тегов, задач и типов
+     *
+     * @param webRequest запрос с условными заголовками
      * @return список тегов в json
      */
     @GetMapping("/tags")
-    public ResponseEntity<List<Tag>> getAllTags() {
+    public ResponseEntity<List<Tag>> getAllTags(WebRequest webRequest) {
+        taskWriteBehind.flush();
         try {
-            List<Tag> tags = new ArrayList<>(tagRepository.findAll());
+            Optional<List<Tag>> modified = tagService.findAllIfModified(notModified(webRequest));
+            if (modified.isEmpty()) {
+                return null;
+            }
+            List<Tag> tags = modified.get();
             if (tags.isEmpty()) {
                 return new ResponseEntity<>(HttpStatus.NO_CONTENT);
             }
             return new ResponseEntity<>(tags, HttpStatus.OK);
         } catch (Exception e) {
+            recordError(e);
             return new ResponseEntity<>(null, HttpStatus.INTERNAL_SERVER_ERROR);
         }
     }
 
     /**
-     * выводит список всех тегов, у которых есть задача
+     * выводит список всех тегов, у которых есть задача (без списков задач)
      *
+     * @param withCounts выводить ли число задач каждого тега
+     * @param webRequest запрос с условными заголовками
      * @return список тегов в json
      */
     @GetMapping("/tags/tasks")
-    public ResponseEntity<List<Tag>> getTagsWithTasks() {
+    public ResponseEntity<List<TagSummary>> getTagsWithTasks(
+            @RequestParam(value = "withCounts", defaultValue = "false") boolean withCounts,
+            WebRequest webRequest) {
         try {
-            List<Tag> tags = new ArrayList<>(tagRepository.findAll().stream()
-                    .distinct()
-                    .filter(tag -> (!tag.getTasks().isEmpty()))
-                    .collect(Collectors.toList()));
+            Optional<List<TagSummary>> modified = tagService.findAllWithTasksIfModified(withCounts, notModified(webRequest));
+            if (modified.isEmpty()) {
+                return null;
+            }
+            List<TagSummary> tags = modified.get();
             if (tags.isEmpty()) {
                 return new ResponseEntity<>(HttpStatus.NO_CONTENT);
             }
             return new ResponseEntity<>(tags, HttpStatus.OK);
         } catch (Exception e) {
+            recordError(e);
             return new ResponseEntity<>(null, HttpStatus.INTERNAL_SERVER_ERROR);
         }
     }
 
     /**
-     * выводит тег по его id
+     * выводит тег по его id; задачи приходят из базы уже отсортированными по убыванию типа
      *
      * @param id id тега
      * @return найденный тег
      */
     @GetMapping("/tags/{id}")
     public ResponseEntity<Tag> getTagById(@PathVariable("id") int id) {
-        Optional<Tag> tagData = tagRepository.findById(id);
+        taskWriteBehind.flush();
+        Optional<Tag> tagData = tagService.findById(id);
         if (tagData.isPresent()) {
             Tag tag = tagData.get();
-            tag.sortTasksDesc();
-            return new ResponseEntity<>(tag, HttpStatus.OK);
+            // ETag версии один для json, Smile и CBOR и нужен как есть для If-Match, поэтому представление - по Vary
+            return ResponseEntity.ok().eTag(versionTag(tag.getVersion())).varyBy(HttpHeaders.ACCEPT).body(tag);
         } else {
             return new ResponseEntity<>(HttpStatus.NOT_FOUND);
         }
@@ -272,33 +830,45 @@ public class Controller {
     public ResponseEntity<Tag> createTag(@RequestBody Tag tag) {
         try {
             Tag tag1 = tagRepository.save(new Tag(tag.getName()));
+            changeEventPublisher.publish("tag.created", new TagSummary(tag1.getId(), tag1.getName()));
             return new ResponseEntity<>(tag1, HttpStatus.CREATED);
         } catch (Exception e) {
+            recordError(e);
             return new ResponseEntity<>(null, HttpStatus.INTERNAL_SERVER_ERROR);
         }
     }
 
     /**
-     * обновляет имя тега по его id
+     * обновляет имя тега по его id; с заголовком If-Match - только если версия тега совпадает, иначе 412
      *
      * @param id id тега
      * @param tag тег с обновленным именем
+     * @param ifMatch ETag версии тега, на которую рассчитано изменение
      * @return обновленный тег
      */
     @PutMapping("/tags/{id}")
-    public ResponseEntity<Tag> updateTag(@PathVariable("id") int id, @RequestBody Tag tag) {
-        Optional<Tag> tagData = tagRepository.findById(id);
-        if (tagData.isPresent()) {
-            Tag tag1 = tagData.get();
-            tag1.setName(tag.getName());
-            return new ResponseEntity<>(tagRepository.save(tag1), HttpStatus.OK);
+    public ResponseEntity<Tag> updateTag(@PathVariable("id") int id, @RequestBody Tag tag,
+                                         @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        Optional<Tag> saved;
+        try {
+            saved = tagService.rename(id, tag.getName(), parseVersion(ifMatch));
+        } catch (NumberFormatException e) {
+            return new ResponseEntity<>(HttpStatus.PRECONDITION_FAILED);
+        } catch (OptimisticLockingFailureException e) {
+            return new ResponseEntity<>(ifMatch == null ? HttpStatus.CONFLICT : HttpStatus.PRECONDITION_FAILED);
+        }
+        if (saved.isPresent()) {
+            Tag tag1 = saved.get();
+            changeEventPublisher.publish("tag.updated", new TagSummary(tag1.getId(), tag1.getName()));
+            return ResponseEntity.ok().eTag(versionTag(tag1.getVersion())).body(tag1);
         } else {
             return new ResponseEntity<>(HttpStatus.NOT_FOUND);
         }
     }
 
     /**
-     * присваивает тег задаче по его id и id задачи
+     * присваивает тег задаче по его id и id задачи;
+     * тег проверяется по кэшу, изменяется только задача
      *
      * @param id id тега
      * @param idTask id задачи
@@ -306,21 +876,22 @@ public class Controller {
      */
     @PutMapping("/tags/task/{id}")
     public ResponseEntity<Tag> addTagToTask(@PathVariable("id") int id, @RequestBody int idTask) {
-        Optional<Tag> tagData = tagRepository.findById(id);
-        Optional<Task> task = taskRepository.findById(idTask);
-
-        if (tagData.isPresent() && task.isPresent()) {
-            Tag tag1 = tagData.get();
-            Task task1 = task.get();
-            tag1.addTask(task1);
-            return new ResponseEntity<>(tagRepository.save(tag1), HttpStatus.OK);
+        Optional<TagService.TagChange> change = tagService.addTask(id, idTask);
+        if (change.isPresent()) {
+            change.get().tag().getTasks().stream()
+                    .filter(task -> task.getId() == idTask)
+                    .findFirst()
+                    .ifPresent(taskAgenda::update);
+            changeEventPublisher.publish("tag.assigned", Map.of("tagId", id, "taskIds", List.of(idTask)));
+            return new ResponseEntity<>(change.get().tag(), HttpStatus.OK);
         } else {
             return new ResponseEntity<>(HttpStatus.NOT_FOUND);
         }
     }
 
     /**
-     * удаляет тег у задачи по его id и id задачи
+     * удаляет тег у задачи по его id и id задачи;
+     * тег проверяется по кэшу, изменяется только задача
      *
      * @param id id тега
      * @param idTask id задачи
@@ -328,21 +899,77 @@ public class Controller {
      */
     @DeleteMapping("/tags/task/{id}")
     public ResponseEntity<Tag> removeTagFromTask(@PathVariable("id") int id, @RequestBody int idTask) {
-        Optional<Tag> tagData = tagRepository.findById(id);
-        Optional<Task> task = taskRepository.findById(idTask);
-
-        if (tagData.isPresent() && task.isPresent()) {
-            Tag tag1 = tagData.get();
-            Task task1 = task.get();
-            tag1.removeTask(task1);
-            return new ResponseEntity<>(tagRepository.save(tag1), HttpStatus.OK);
+        Optional<TagService.TagChange> change = tagService.removeTask(id, idTask);
+        if (change.isPresent()) {
+            if (change.get().changed()) {
+                taskAgenda.remove(idTask);
+                changeEventPublisher.publish("tag.removed", Map.of("tagId", id, "taskIds", List.of(idTask)));
+            }
+            return new ResponseEntity<>(change.get().tag(), HttpStatus.OK);
         } else {
             return new ResponseEntity<>(HttpStatus.NOT_FOUND);
         }
     }
 
     /**
-     * удаляет тег по его id
+     * присваивает тег списку задач одним запросом UPDATE на каждые IN_CLAUSE_CHUNK id
+     *
+     * @param id id тега
+     * @param idTasks id задач
+     * @return число переданных и измененных задач
+     */
+    @PutMapping("/tags/{id}/tasks")
+    public ResponseEntity<BulkResult> addTagToTasks(@PathVariable("id") int id, @RequestBody List<Integer> idTasks) {
+        if (tagRepository.findSummaryById(id).isEmpty()) {
+            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+        }
+        try {
+            Tag tag = tagRepository.getReferenceById(id);
+            int affected = 0;
+            for (int from = 0; from < idTasks.size(); from += IN_CLAUSE_CHUNK) {
+                affected += taskRepository.assignTag(tag,
+                        idTasks.subList(from, Math.min(from + IN_CLAUSE_CHUNK, idTasks.size())));
+            }
+            taskAgenda.clear();
+            changeEventPublisher.publish("tag.assigned", Map.of("tagId", id, "taskIds", idTasks), affected);
+            return new ResponseEntity<>(new BulkResult(idTasks.size(), affected), HttpStatus.OK);
+        } catch (Exception e) {
+            recordError(e);
+            return new ResponseEntity<>(null, HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    /**
+     * удаляет тег у списка задач одним запросом UPDATE на каждые IN_CLAUSE_CHUNK id;
+     * задачи с другим тегом не меняются
+     *
+     * @param id id тега
+     * @param idTasks id задач
+     * @return число переданных и измененных задач
+     */
+    @DeleteMapping("/tags/{id}/tasks")
+    public ResponseEntity<BulkResult> removeTagFromTasks(@PathVariable("id") int id, @RequestBody List<Integer> idTasks) {
+        if (tagRepository.findSummaryById(id).isEmpty()) {
+            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+        }
+        try {
+            int affected = 0;
+            for (int from = 0; from < idTasks.size(); from += IN_CLAUSE_CHUNK) {
+                affected += taskRepository.removeTag(id,
+                        idTasks.subList(from, Math.min(from + IN_CLAUSE_CHUNK, idTasks.size())));
+            }
+            taskAgenda.clear();
+            changeEventPublisher.publish("tag.removed", Map.of("tagId", id, "taskIds", idTasks), affected);
+            return new ResponseEntity<>(new BulkResult(idTasks.size(), affected), HttpStatus.OK);
+        } catch (Exception e) {
+            recordError(e);
+            return new ResponseEntity<>(null, HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    /**
+     * удаляет тег по его id вместе с его задачами;
+     * задачи удаляются пачками по taskapi.delete.chunk-size строк
      *
      * @param id id тега
      * @return пустую страницу
@@ -350,10 +977,125 @@ public class Controller {
     @DeleteMapping("/tags/{id}")
     public ResponseEntity<HttpStatus> deleteTag(@PathVariable("id") int id) {
         try {
-            tagRepository.deleteById(id);
+            taskWriteBehind.flush();
+            deleteInChunks(() -> taskRepository.deleteChunkByTag(id, deleteChunkSize));
+            tagRepository.deleteTagById(id);
+            taskAgenda.clear();
+            changeEventPublisher.publish("tag.deleted", Map.of("id", id));
             return new ResponseEntity<>(HttpStatus.NO_CONTENT);
         } catch (Exception e) {
+            recordError(e);
             return new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
         }
     }
+
+    /**
+     * поток событий изменения задач и тегов (Server-Sent Events);
+     * при переподключении клиент передает Last-Event-ID и получает пропущенные события из буфера,
+     * а если они уже вытеснены или id остался от прошлого запуска приложения, событие reset
+     *
+     * @param lastEventId id последнего полученного события
+     * @return поток событий
+     */
+    @GetMapping(value = "/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter getEvents(@RequestHeader(value = "Last-Event-ID", required = false) String lastEventId) {
+        return changeEventPublisher.subscribe(lastEventId);
+    }
+
+    /**
+     * выводит счетчики кэшей справочников (типы задач и теги)
+     *
+     * @return счетчики по имени кэша
+     */
+    @GetMapping("/cache/stats")
+    public ResponseEntity<Map<String, CacheStats>> getCacheStats() {
+        Map<String, CacheStats> stats = new TreeMap<>();
+        for (String name : cacheManager.getCacheNames()) {
+            if (cacheManager.getCache(name) instanceof CaffeineCache cache) {
+                com.github.benmanes.caffeine.cache.stats.CacheStats caffeineStats = cache.getNativeCache().stats();
+                stats.put(name, new CacheStats(cache.getNativeCache().estimatedSize(), caffeineStats.hitCount(),
+                        caffeineStats.missCount(), caffeineStats.evictionCount()));
+            }
+        }
+        return new ResponseEntity<>(stats, HttpStatus.OK);
+    }
+
+    /**
+     * выводит общее число задач и число задач без типа и без тега из снимка счетчиков;
+     * время снимка - в заголовке Last-Modified
+     *
+     * @return счетчики в json
+     */
+    @GetMapping("/stats")
+    public ResponseEntity<TaskTotals> getStats() {
+        try {
+            TaskStats.Snapshot snapshot = taskStats.current();
+            return ResponseEntity.ok().lastModified(snapshot.takenAt().getTime()).body(snapshot.totals());
+        } catch (Exception e) {
+            recordError(e);
+            return new ResponseEntity<>(null, HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    /**
+     * выводит число задач по типам из снимка счетчиков, включая типы без задач
+     *
+     * @return счетчики по типам в json
+     */
+    @GetMapping("/stats/types")
+    public ResponseEntity<List<TypeCount>> getStatsByType() {
+        try {
+            TaskStats.Snapshot snapshot = taskStats.current();
+            return ResponseEntity.ok().lastModified(snapshot.takenAt().getTime()).body(snapshot.types());
+        } catch (Exception e) {
+            recordError(e);
+            return new ResponseEntity<>(null, HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    /**
+     * выводит число задач по тегам из снимка счетчиков, включая теги без задач
+     *
+     * @return счетчики по тегам в json
+     */
+    @GetMapping("/stats/tags")
+    public ResponseEntity<List<TagSummary>> getStatsByTag() {
+        try {
+            TaskStats.Snapshot snapshot = taskStats.current();
+            return ResponseEntity.ok().lastModified(snapshot.takenAt().getTime()).body(snapshot.tags());
+        } catch (Exception e) {
+            recordError(e);
+            return new ResponseEntity<>(null, HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    /**
+     * выводит число задач по дням интервала [from, to), дни без задач не выводятся;
+     * по умолчанию - последние 30 дней по сегодняшний в поясе счетчиков, интервал не длиннее taskapi.stats.max-days дней
+     *
+     * @param from первый день в формате yyyy-MM-dd
+     * @param to день после последнего в формате yyyy-MM-dd
+     * @return счетчики по дням в json
+     */
+    @GetMapping("/stats/days")
+    public ResponseEntity<List<DayCount>> getStatsByDay(
+            @RequestParam(value = "from", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(value = "to", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to) {
+        if (to == null) {
+            to = from == null ? taskStats.today().plusDays(1) : from.plusDays(30);
+        }
+        if (from == null) {
+            from = to.minusDays(30);
+        }
+        if (!from.isBefore(to) || from.plusDays(statsMaxDays).isBefore(to)) {
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        }
+        try {
+            TaskStats.Days days = taskStats.days(from, to);
+            return ResponseEntity.ok().lastModified(days.takenAt().getTime()).body(days.days());
+        } catch (Exception e) {
+            recordError(e);
+            return new ResponseEntity<>(null, HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
 }
@@ -0,0 +1,15 @@
+package com.example.taskApi.config;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+
+/**
+ * считает sql-запросы Hibernate в статистику текущего http-запроса
+ * (hibernate.session_factory.statement_inspector); текст запроса не меняет
+ */
+public class CountingStatementInspector implements StatementInspector {
+    @Override
+    public String inspect(String sql) {
+        RequestSqlStats.recordStatement(sql);
+        return sql;
+    }
+}
@@ -0,0 +1,74 @@
+package com.example.taskApi.config;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.springframework.stereotype.Component;
+
+import java.util.function.ToDoubleFunction;
+
+/**
+ * публикует статистику Hibernate (hibernate.generate_statistics) как метрики:
+ * число sql-запросов, загрузок сущностей и коллекций, выполнений запросов и обращений к кэшу второго уровня
+ */
+@Component
+public class HibernateStatisticsMetrics implements MeterBinder {
+    private final EntityManagerFactory entityManagerFactory;
+
+    public HibernateStatisticsMetrics(EntityManagerFactory entityManagerFactory) {
+        this.entityManagerFactory = entityManagerFactory;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        counter(registry, statistics, "hibernate.sessions.open", "Sessions opened", Statistics::getSessionOpenCount);
+        counter(registry, statistics, "hibernate.transactions", "Transactions completed",
+                Statistics::getTransactionCount);
+        counter(registry, statistics, "hibernate.statements", "JDBC statements prepared",
+                Statistics::getPrepareStatementCount);
+        counter(registry, statistics, "hibernate.flushes", "Session flushes", Statistics::getFlushCount);
+        counter(registry, statistics, "hibernate.entities.loads", "Entities loaded", Statistics::getEntityLoadCount);
+        counter(registry, statistics, "hibernate.entities.fetches", "Entities fetched by a separate select",
+                Statistics::getEntityFetchCount);
+        counter(registry, statistics, "hibernate.entities.inserts", "Entities inserted", Statistics::getEntityInsertCount);
+        counter(registry, statistics, "hibernate.entities.updates", "Entities updated", Statistics::getEntityUpdateCount);
+        counter(registry, statistics, "hibernate.entities.deletes", "Entities deleted", Statistics::getEntityDeleteCount);
+        counter(registry, statistics, "hibernate.collections.loads", "Collections loaded",
+                Statistics::getCollectionLoadCount);
+        counter(registry, statistics, "hibernate.collections.fetches", "Collections fetched by a separate select",
+                Statistics::getCollectionFetchCount);
+        counter(registry, statistics, "hibernate.query.executions", "Queries executed",
+                Statistics::getQueryExecutionCount);
+        Gauge.builder("hibernate.query.executions.max", statistics, Statistics::getQueryExecutionMaxTime)
+                .description("Slowest query execution time")
+                .baseUnit("milliseconds")
+                .register(registry);
+        FunctionCounter.builder("hibernate.second.level.cache.requests", statistics, Statistics::getSecondLevelCacheHitCount)
+                .description("Second-level cache requests")
+                .tag("result", "hit")
+                .register(registry);
+        FunctionCounter.builder("hibernate.second.level.cache.requests", statistics, Statistics::getSecondLevelCacheMissCount)
+                .description("Second-level cache requests")
+                .tag("result", "miss")
+                .register(registry);
+        Gauge.builder("hibernate.second.level.cache.hit.ratio", statistics, HibernateStatisticsMetrics::secondLevelCacheHitRatio)
+                .description("Share of second-level cache requests that were hits")
+                .register(registry);
+    }
+
+    private static void counter(MeterRegistry registry, Statistics statistics, String name, String description,
+                                ToDoubleFunction<Statistics> count) {
+        FunctionCounter.builder(name, statistics, count).description(description).register(registry);
+    }
+
+    private static double secondLevelCacheHitRatio(Statistics statistics) {
+        long hits = statistics.getSecondLevelCacheHitCount();
+        long requests = hits + statistics.getSecondLevelCacheMissCount();
+        return requests == 0 ? Double.NaN : (double) hits / requests;
+    }
+}
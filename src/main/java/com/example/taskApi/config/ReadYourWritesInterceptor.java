@@ -0,0 +1,57 @@
+package com.example.taskApi.config;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
+
+import java.time.Duration;
+import java.util.Set;
+
+/**
+ * чтение своих изменений при репликах: клиент, отправивший изменяющий запрос,
+ * следующие taskapi.replica.sticky-window читает только из основной базы;
+ * клиент определяется по заголовку X-Client-Id. Запросы без заголовка всегда читают с реплик:
+ * адрес за балансировщиком или прокси один у всех клиентов, и одна запись отправила бы всех в основную базу
+ */
+public class ReadYourWritesInterceptor implements AsyncHandlerInterceptor {
+    static final String CLIENT_HEADER = "X-Client-Id";
+
+    private static final Set<String> SAFE_METHODS = Set.of("GET", "HEAD", "OPTIONS");
+
+    private final Cache<String, Boolean> recentWriters;
+
+    public ReadYourWritesInterceptor(Duration stickyWindow) {
+        this.recentWriters = Caffeine.newBuilder()
+                .expireAfterWrite(stickyWindow)
+                .maximumSize(100_000)
+                .build();
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        String client = request.getHeader(CLIENT_HEADER);
+        if (client == null || client.isBlank()) {
+            ReplicaRoutingDataSource.usePrimary(false);
+            return true;
+        }
+        if (!SAFE_METHODS.contains(request.getMethod())) {
+            recentWriters.put(client, Boolean.TRUE);
+        }
+        ReplicaRoutingDataSource.usePrimary(recentWriters.getIfPresent(client) != null);
+        return true;
+    }
+
+    @Override
+    public void afterConcurrentHandlingStarted(HttpServletRequest request, HttpServletResponse response,
+                                               Object handler) {
+        ReplicaRoutingDataSource.usePrimary(false);
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler,
+                                Exception ex) {
+        ReplicaRoutingDataSource.usePrimary(false);
+    }
+}
@@ -0,0 +1,42 @@
+package com.example.taskApi.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import javax.sql.DataSource;
+import java.util.Map;
+
+/**
+ * раз в taskapi.replica.lag-check-interval-ms измеряет отставание каждой реплики запросом lag-query;
+ * реплика, на которой запрос не выполнился, считается недоступной до следующей удачной проверки
+ */
+public class ReplicaLagMonitor {
+    private static final Logger log = LoggerFactory.getLogger(ReplicaLagMonitor.class);
+
+    private final ReplicaRoutingDataSource routingDataSource;
+    private final String lagQuery;
+
+    public ReplicaLagMonitor(ReplicaRoutingDataSource routingDataSource, String lagQuery) {
+        this.routingDataSource = routingDataSource;
+        this.lagQuery = lagQuery;
+    }
+
+    @Scheduled(fixedDelayString = "${taskapi.replica.lag-check-interval-ms:1000}")
+    public void checkLag() {
+        for (Map.Entry<String, DataSource> replica : routingDataSource.getReplicas().entrySet()) {
+            String name = replica.getKey();
+            try {
+                Number seconds = new JdbcTemplate(replica.getValue()).queryForObject(lagQuery, Number.class);
+                routingDataSource.updateLag(name, seconds == null ? 0 : Math.round(seconds.doubleValue() * 1000));
+            } catch (DataAccessException e) {
+                if (routingDataSource.getLagMillis(name).isPresent()) {
+                    log.warn("Replica {} is unavailable, reads go to the primary", name, e);
+                }
+                routingDataSource.updateLag(name, null);
+            }
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package com.example.taskApi.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * реплики для чтения (taskapi.replica.*); без urls все запросы идут в spring.datasource
+ *
+ * @param urls jdbc-адреса реплик
+ * @param username пользователь реплик, по умолчанию из spring.datasource
+ * @param password пароль реплик, по умолчанию из spring.datasource
+ * @param maxLag отставание, после которого реплика не получает чтения
+ * @param stickyWindow сколько после изменения клиент читает из основной базы
+ * @param lagQuery запрос отставания реплики в секундах
+ */
+@ConfigurationProperties("taskapi.replica")
+public record ReplicaProperties(List<String> urls,
+                                String username,
+                                String password,
+                                @DefaultValue("5s") Duration maxLag,
+                                @DefaultValue("5s") Duration stickyWindow,
+                                @DefaultValue("SELECT CASE WHEN pg_last_wal_receive_lsn() = pg_last_wal_replay_lsn() THEN 0 " +
+                                        "ELSE COALESCE(EXTRACT(EPOCH FROM now() - pg_last_xact_replay_timestamp()), 0) END")
+                                String lagQuery) {
+}
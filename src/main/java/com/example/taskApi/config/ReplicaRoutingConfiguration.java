@@ -0,0 +1,87 @@
+package com.example.taskApi.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * маршрутизация чтения на реплики, включается заданием taskapi.replica.urls:
+ * основная база и каждая реплика получают свой пул Hikari с настройками spring.datasource.hikari,
+ * приложение (JPA, JdbcTemplate, Flyway) видит их через один ленивый источник
+ */
+@Configuration
+@ConditionalOnProperty("taskapi.replica.urls")
+@EnableConfigurationProperties(ReplicaProperties.class)
+public class ReplicaRoutingConfiguration {
+
+    @Bean
+    ReplicaRoutingDataSource replicaRoutingDataSource(DataSourceProperties dataSourceProperties,
+                                                      ReplicaProperties replicaProperties, Environment environment) {
+        HikariDataSource primary = dataSourceProperties.initializeDataSourceBuilder()
+                .type(HikariDataSource.class)
+                .build();
+        configurePool(primary, ReplicaRoutingDataSource.PRIMARY, environment);
+
+        Map<String, DataSource> replicas = new LinkedHashMap<>();
+        List<String> urls = replicaProperties.urls();
+        for (int i = 0; i < urls.size(); i++) {
+            String name = "replica-" + i;
+            HikariDataSource replica = DataSourceBuilder.create()
+                    .type(HikariDataSource.class)
+                    .url(urls.get(i))
+                    .username(replicaProperties.username() != null
+                            ? replicaProperties.username() : dataSourceProperties.determineUsername())
+                    .password(replicaProperties.password() != null
+                            ? replicaProperties.password() : dataSourceProperties.determinePassword())
+                    .build();
+            configurePool(replica, name, environment);
+            replicas.put(name, replica);
+        }
+        return new ReplicaRoutingDataSource(primary, replicas, replicaProperties.maxLag());
+    }
+
+    /**
+     * источник для всего приложения: соединение берется из пула только при первом запросе,
+     * когда транзакция уже помечена read-only и известно, куда ее направить
+     */
+    @Bean
+    @Primary
+    DataSource dataSource(ReplicaRoutingDataSource replicaRoutingDataSource) {
+        LazyConnectionDataSourceProxy dataSource = new LazyConnectionDataSourceProxy();
+        dataSource.setTargetDataSource(replicaRoutingDataSource);
+        dataSource.setDefaultAutoCommit(true);
+        dataSource.setDefaultTransactionIsolation(Connection.TRANSACTION_READ_COMMITTED);
+        return dataSource;
+    }
+
+    @Bean
+    ReplicaLagMonitor replicaLagMonitor(ReplicaRoutingDataSource replicaRoutingDataSource,
+                                        ReplicaProperties replicaProperties) {
+        return new ReplicaLagMonitor(replicaRoutingDataSource, replicaProperties.lagQuery());
+    }
+
+    @Bean
+    ReadYourWritesInterceptor readYourWritesInterceptor(ReplicaProperties replicaProperties) {
+        return new ReadYourWritesInterceptor(replicaProperties.stickyWindow());
+    }
+
+    private static void configurePool(HikariDataSource dataSource, String name, Environment environment) {
+        Binder.get(environment).bind("spring.datasource.hikari", Bindable.ofInstance(dataSource));
+        dataSource.setPoolName(name);
+    }
+}
@@ -0,0 +1,108 @@
+package com.example.taskApi.config;
+
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * отправляет соединения read-only транзакций на реплики по кругу, остальные - в основную базу;
+ * реплика с неизвестным или большим max-lag отставанием пропускается, без подходящих реплик
+ * чтение идет в основную базу. Транзакция помечается read-only уже после получения соединения,
+ * поэтому источник должен быть обернут в LazyConnectionDataSourceProxy
+ */
+public class ReplicaRoutingDataSource extends AbstractRoutingDataSource {
+    static final String PRIMARY = "primary";
+
+    private static final ThreadLocal<Boolean> PRIMARY_ONLY = new ThreadLocal<>();
+
+    private final List<String> replicas;
+    private final long maxLagMillis;
+    private final Map<String, Long> lagMillis = new ConcurrentHashMap<>();
+    private final AtomicInteger next = new AtomicInteger();
+
+    /**
+     * @param primary основная база
+     * @param replicas реплики по имени
+     * @param maxLag допустимое отставание реплики
+     */
+    public ReplicaRoutingDataSource(DataSource primary, Map<String, DataSource> replicas, Duration maxLag) {
+        Map<Object, Object> targets = new HashMap<>(replicas);
+        targets.put(PRIMARY, primary);
+        setTargetDataSources(targets);
+        setDefaultTargetDataSource(primary);
+        this.replicas = List.copyOf(replicas.keySet());
+        this.maxLagMillis = maxLag.toMillis();
+    }
+
+    /**
+     * направляет все соединения текущего потока в основную базу (чтение своих изменений)
+     *
+     * @param primaryOnly true - только основная база, false - обычная маршрутизация
+     */
+    public static void usePrimary(boolean primaryOnly) {
+        if (primaryOnly) {
+            PRIMARY_ONLY.set(Boolean.TRUE);
+        } else {
+            PRIMARY_ONLY.remove();
+        }
+    }
+
+    /**
+     * @return направлены ли соединения текущего потока только в основную базу
+     */
+    public static boolean isPrimaryOnly() {
+        return PRIMARY_ONLY.get() != null;
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        if (!TransactionSynchronizationManager.isCurrentTransactionReadOnly() || PRIMARY_ONLY.get() != null) {
+            return PRIMARY;
+        }
+        int start = Math.floorMod(next.getAndIncrement(), replicas.size());
+        for (int i = 0; i < replicas.size(); i++) {
+            String replica = replicas.get((start + i) % replicas.size());
+            Long lag = lagMillis.get(replica);
+            if (lag != null && lag <= maxLagMillis) {
+                return replica;
+            }
+        }
+        return PRIMARY;
+    }
+
+    /**
+     * @return реплики по имени
+     */
+    public Map<String, DataSource> getReplicas() {
+        Map<String, DataSource> result = new LinkedHashMap<>();
+        for (String replica : replicas) {
+            result.put(replica, getResolvedDataSources().get(replica));
+        }
+        return result;
+    }
+
+    /**
+     * @param replica имя реплики
+     * @return последнее измеренное отставание в мс или пусто, если реплика недоступна
+     */
+    public Optional<Long> getLagMillis(String replica) {
+        return Optional.ofNullable(lagMillis.get(replica));
+    }
+
+    /**
+     * @param replica имя реплики
+     * @param millis отставание в мс, null - реплика недоступна
+     */
+    void updateLag(String replica, Long millis) {
+        if (millis == null) {
+            lagMillis.remove(replica);
+        } else {
+            lagMillis.put(replica, millis);
+        }
+    }
+}
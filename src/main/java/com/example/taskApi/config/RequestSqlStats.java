@@ -0,0 +1,69 @@
+package com.example.taskApi.config;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * sql-статистика текущего http-запроса: число запросов, суммарное время в базе и их текст;
+ * живет в ThreadLocal между preHandle и afterCompletion SqlBudgetInterceptor
+ */
+public final class RequestSqlStats {
+    static final int MAX_RECORDED_SQL = 50;
+
+    private static final ThreadLocal<RequestSqlStats> CURRENT = new ThreadLocal<>();
+
+    private int statements;
+    private long nanos;
+    private final List<String> sql = new ArrayList<>();
+
+    private RequestSqlStats() {
+    }
+
+    static void start() {
+        CURRENT.set(new RequestSqlStats());
+    }
+
+    /**
+     * @return статистика текущего запроса или null вне http-запроса
+     */
+    static RequestSqlStats current() {
+        return CURRENT.get();
+    }
+
+    static void stop() {
+        CURRENT.remove();
+    }
+
+    static void recordStatement(String statement) {
+        RequestSqlStats stats = CURRENT.get();
+        if (stats != null) {
+            stats.statements++;
+            if (stats.sql.size() < MAX_RECORDED_SQL) {
+                stats.sql.add(statement);
+            }
+        }
+    }
+
+    static void recordTime(long nanos) {
+        RequestSqlStats stats = CURRENT.get();
+        if (stats != null) {
+            stats.nanos += nanos;
+        }
+    }
+
+    public int getStatements() {
+        return statements;
+    }
+
+    public long getMillis() {
+        return nanos / 1_000_000;
+    }
+
+    /**
+     * @return текст первых MAX_RECORDED_SQL запросов
+     */
+    public List<String> getSql() {
+        return Collections.unmodifiableList(sql);
+    }
+}
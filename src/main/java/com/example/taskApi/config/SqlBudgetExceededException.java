@@ -0,0 +1,10 @@
+package com.example.taskApi.config;
+
+/**
+ * обработчик сделал больше sql-запросов, чем разрешено его бюджетом (режим fail)
+ */
+public class SqlBudgetExceededException extends IllegalStateException {
+    public SqlBudgetExceededException(String message) {
+        super(message);
+    }
+}
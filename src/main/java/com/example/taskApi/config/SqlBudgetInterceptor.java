@@ -0,0 +1,66 @@
+package com.example.taskApi.config;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.ModelAndView;
+
+/**
+ * проверяет число sql-запросов и время в базе каждого обработчика:
+ * превышение бюджета или taskapi.sql.slow-request пишется в лог вместе с sql,
+ * в режиме fail превышение бюджета бросает SqlBudgetExceededException, чтобы упали тесты
+ */
+@Component
+public class SqlBudgetInterceptor implements HandlerInterceptor {
+    private static final Logger log = LoggerFactory.getLogger(SqlBudgetInterceptor.class);
+
+    private final SqlBudgetProperties properties;
+
+    public SqlBudgetInterceptor(SqlBudgetProperties properties) {
+        this.properties = properties;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        if (properties.mode() != SqlBudgetProperties.Mode.OFF) {
+            RequestSqlStats.start();
+        }
+        return true;
+    }
+
+    /**
+     * оценивает статистику после обработчика, до завершения запроса,
+     * чтобы исключение режима fail дошло до вызывающего
+     */
+    @Override
+    public void postHandle(HttpServletRequest request, HttpServletResponse response, Object handler,
+                           ModelAndView modelAndView) {
+        RequestSqlStats stats = RequestSqlStats.current();
+        if (stats == null || !(handler instanceof HandlerMethod handlerMethod)) {
+            return;
+        }
+        String name = handlerMethod.getMethod().getName();
+        int budget = properties.budgetFor(name);
+        boolean overBudget = budget >= 0 && stats.getStatements() > budget;
+        boolean slow = stats.getMillis() >= properties.slowRequest().toMillis();
+        if (!overBudget && !slow) {
+            return;
+        }
+        String message = String.format("%s %s (%s) made %d SQL statements in %d ms, budget %d",
+                request.getMethod(), request.getRequestURI(), name, stats.getStatements(), stats.getMillis(), budget);
+        log.warn("{}:\n{}", message, String.join("\n", stats.getSql()));
+        if (overBudget && properties.mode() == SqlBudgetProperties.Mode.FAIL) {
+            throw new SqlBudgetExceededException(message);
+        }
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler,
+                                Exception ex) {
+        RequestSqlStats.stop();
+    }
+}
@@ -0,0 +1,33 @@
+package com.example.taskApi.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+import java.util.Map;
+
+/**
+ * бюджет sql-запросов на один http-запрос (taskapi.sql.*)
+ *
+ * @param mode что делать при превышении: off, warn (записать в лог) или fail (бросить исключение)
+ * @param defaultBudget бюджет обработчиков без своего значения, отрицательный отключает проверку
+ * @param budgets бюджеты по имени метода обработчика в Controller, например getTagById
+ * @param slowRequest суммарное время в базе, после которого запрос пишется в лог вместе с sql
+ */
+@ConfigurationProperties("taskapi.sql")
+public record SqlBudgetProperties(@DefaultValue("warn") Mode mode,
+                                  @DefaultValue("-1") int defaultBudget,
+                                  Map<String, Integer> budgets,
+                                  @DefaultValue("500ms") Duration slowRequest) {
+    public enum Mode {
+        OFF, WARN, FAIL
+    }
+
+    /**
+     * @param handler имя метода обработчика
+     * @return бюджет обработчика, отрицательный если проверки нет
+     */
+    public int budgetFor(String handler) {
+        return budgets == null ? defaultBudget : budgets.getOrDefault(handler, defaultBudget);
+    }
+}
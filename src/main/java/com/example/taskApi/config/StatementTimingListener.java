@@ -0,0 +1,31 @@
+package com.example.taskApi.config;
+
+import org.hibernate.SessionEventListener;
+
+/**
+ * суммирует время выполнения sql-запросов и пакетов сессии Hibernate в статистику текущего http-запроса;
+ * создается на каждую сессию (hibernate.session.events.auto)
+ */
+public class StatementTimingListener implements SessionEventListener {
+    private long startedAt;
+
+    @Override
+    public void jdbcExecuteStatementStart() {
+        startedAt = System.nanoTime();
+    }
+
+    @Override
+    public void jdbcExecuteStatementEnd() {
+        RequestSqlStats.recordTime(System.nanoTime() - startedAt);
+    }
+
+    @Override
+    public void jdbcExecuteBatchStart() {
+        startedAt = System.nanoTime();
+    }
+
+    @Override
+    public void jdbcExecuteBatchEnd() {
+        RequestSqlStats.recordTime(System.nanoTime() - startedAt);
+    }
+}
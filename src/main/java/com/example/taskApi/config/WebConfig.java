@@ -0,0 +1,64 @@
+package com.example.taskApi.config;
+
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.http.converter.smile.MappingJackson2SmileHttpMessageConverter;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+@Configuration
+@EnableConfigurationProperties(SqlBudgetProperties.class)
+public class WebConfig implements WebMvcConfigurer {
+    private final SqlBudgetInterceptor sqlBudgetInterceptor;
+    private final ObjectProvider<ReadYourWritesInterceptor> readYourWritesInterceptor;
+    private final ObjectProvider<ConcurrencyLimitInterceptor> concurrencyLimitInterceptor;
+
+    public WebConfig(SqlBudgetInterceptor sqlBudgetInterceptor,
+                     ObjectProvider<ReadYourWritesInterceptor> readYourWritesInterceptor,
+                     ObjectProvider<ConcurrencyLimitInterceptor> concurrencyLimitInterceptor) {
+        this.sqlBudgetInterceptor = sqlBudgetInterceptor;
+        this.readYourWritesInterceptor = readYourWritesInterceptor;
+        this.concurrencyLimitInterceptor = concurrencyLimitInterceptor;
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        // есть только при spring.threads.virtual.enabled; первым, чтобы ожидание не считалось в бюджет sql
+        concurrencyLimitInterceptor.ifAvailable(interceptor ->
+                registry.addInterceptor(interceptor).addPathPatterns("/api/**"));
+        registry.addInterceptor(sqlBudgetInterceptor).addPathPatterns("/api/**");
+        // есть только при taskapi.replica.urls
+        readYourWritesInterceptor.ifAvailable(interceptor ->
+                registry.addInterceptor(interceptor).addPathPatterns("/api/**"));
+    }
+
+    /**
+     * Smile (Accept: application/x-jackson-smile) - двоичный json для внутренних клиентов;
+     * ObjectMapper собирается тем же builder, что и для json, поэтому настройки и модули совпадают.
+     * Конвертер заменяет стандартный на его месте после json, так что без Accept по-прежнему отдается json
+     *
+     * @param builder builder ObjectMapper из Spring Boot (новый на каждую точку внедрения)
+     * @return конвертер Smile
+     */
+    @Bean
+    MappingJackson2SmileHttpMessageConverter smileHttpMessageConverter(Jackson2ObjectMapperBuilder builder) {
+        return new MappingJackson2SmileHttpMessageConverter(builder.factory(new SmileFactory()).build());
+    }
+
+    /**
+     * CBOR (Accept: application/cbor), настроенный так же, как json
+     *
+     * @param builder builder ObjectMapper из Spring Boot (новый на каждую точку внедрения)
+     * @return конвертер CBOR
+     */
+    @Bean
+    MappingJackson2CborHttpMessageConverter cborHttpMessageConverter(Jackson2ObjectMapperBuilder builder) {
+        return new MappingJackson2CborHttpMessageConverter(builder.factory(new CBORFactory()).build());
+    }
+}
@@ -0,0 +1,20 @@
+package com.example.taskApi.dto;
+
+import java.util.List;
+
+/**
+ * результат пакетной загрузки задач
+ *
+ * @param accepted число сохраненных задач
+ * @param errors задачи, которые не прошли проверку
+ */
+public record BatchResult(int accepted, List<BatchError> errors) {
+    /**
+     * ошибка одного элемента пакета
+     *
+     * @param index номер элемента в запросе, начиная с 0
+     * @param message причина
+     */
+    public record BatchError(int index, String message) {
+    }
+}
@@ -0,0 +1,10 @@
+package com.example.taskApi.dto;
+
+/**
+ * результат массового изменения задач
+ *
+ * @param requested число переданных id
+ * @param affected число измененных строк
+ */
+public record BulkResult(int requested, int affected) {
+}
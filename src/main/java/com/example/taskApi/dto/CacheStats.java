@@ -0,0 +1,12 @@
+package com.example.taskApi.dto;
+
+/**
+ * счетчики кэша
+ *
+ * @param size число записей
+ * @param hits попадания
+ * @param misses промахи
+ * @param evictions вытеснения по размеру или времени
+ */
+public record CacheStats(long size, long hits, long misses, long evictions) {
+}
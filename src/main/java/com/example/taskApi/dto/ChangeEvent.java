@@ -0,0 +1,11 @@
+package com.example.taskApi.dto;
+
+/**
+ * событие изменения задач или тегов для потока /api/events
+ *
+ * @param id порядковый номер события, клиент возвращает его в Last-Event-ID
+ * @param type тип события, например task.created или tag.assigned
+ * @param data измененные данные: сущность, ее id или параметры массовой операции
+ */
+public record ChangeEvent(long id, String type, Object data) {
+}
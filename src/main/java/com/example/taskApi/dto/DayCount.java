@@ -0,0 +1,12 @@
+package com.example.taskApi.dto;
+
+import java.time.LocalDate;
+
+/**
+ * число задач на день
+ *
+ * @param date день
+ * @param taskCount число задач
+ */
+public record DayCount(LocalDate date, long taskCount) {
+}
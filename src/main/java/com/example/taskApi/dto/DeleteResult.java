@@ -0,0 +1,9 @@
+package com.example.taskApi.dto;
+
+/**
+ * результат массового удаления
+ *
+ * @param deleted число удаленных строк
+ */
+public record DeleteResult(long deleted) {
+}
@@ -0,0 +1,47 @@
+package com.example.taskApi.dto;
+
+import java.util.Date;
+
+/**
+ * версия таблиц из table_version и журнала table_change: счетчик изменений и время последнего изменения
+ * по часам базы; счетчик растет при фиксации любой вставки, изменения или удаления строк
+ *
+ * @param version счетчик изменений
+ * @param lastModified время последнего изменения, null если версия не найдена
+ */
+public record TableVersion(long version, Date lastModified) {
+    /**
+     * строит ETag по версиям таблиц, от которых зависит ответ
+     *
+     * @param versions версии таблиц
+     * @return ETag в кавычках
+     */
+    public static String etag(TableVersion... versions) {
+        StringBuilder etag = new StringBuilder("\"");
+        for (int i = 0; i < versions.length; i++) {
+            if (i > 0) {
+                etag.append('.');
+            }
+            etag.append(versions[i].version());
+        }
+        return etag.append('"').toString();
+    }
+
+    /**
+     * выбирает самое позднее время изменения из версий таблиц
+     *
+     * @param versions версии таблиц
+     * @return время в миллисекундах, -1 если таблицы пустые
+     */
+    public static long lastModifiedMillis(TableVersion... versions) {
+        long lastModified = -1;
+        for (TableVersion version : versions) {
+            lastModified = Math.max(lastModified, version.lastModifiedMillis());
+        }
+        return lastModified;
+    }
+
+    private long lastModifiedMillis() {
+        return lastModified == null ? -1 : lastModified.getTime();
+    }
+}
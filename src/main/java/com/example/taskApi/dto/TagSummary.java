@@ -0,0 +1,17 @@
+package com.example.taskApi.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * тег без списка задач, с числом задач при необходимости
+ *
+ * @param id id тега
+ * @param name имя тега
+ * @param taskCount число задач тега, null если не запрашивалось
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record TagSummary(int id, String name, Long taskCount) {
+    public TagSummary(int id, String name) {
+        this(id, name, null);
+    }
+}
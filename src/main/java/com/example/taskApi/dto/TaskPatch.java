@@ -0,0 +1,17 @@
+package com.example.taskApi.dto;
+
+import java.util.Date;
+
+/**
+ * частичное изменение задачи; null в поле означает, что поле не меняется
+ *
+ * @param name имя
+ * @param description описание
+ * @param date дата
+ * @param typeId id типа
+ */
+public record TaskPatch(String name, String description, Date date, Integer typeId) {
+    public boolean isEmpty() {
+        return name == null && description == null && date == null && typeId == null;
+    }
+}
@@ -0,0 +1,22 @@
+package com.example.taskApi.dto;
+
+import org.springframework.data.domain.Sort;
+
+import java.util.Date;
+import java.util.List;
+
+/**
+ * условия поиска задач; null в условии означает, что по нему не отбираем
+ *
+ * @param typeId id типа
+ * @param tagId id тега
+ * @param namePrefix начало имени
+ * @param from начало интервала дат (включается)
+ * @param to конец интервала дат (не включается)
+ * @param fields выводимые поля, пустой список - все поля
+ * @param sort сортировка
+ * @param limit максимальное число задач
+ */
+public record TaskSearch(Integer typeId, Integer tagId, String namePrefix, Date from, Date to,
+                         List<String> fields, Sort sort, int limit) {
+}
@@ -0,0 +1,20 @@
+package com.example.taskApi.dto;
+
+import java.util.Date;
+
+/**
+ * задача, найденная полнотекстовым поиском, с оценкой релевантности
+ */
+public interface TaskSearchHit {
+    Integer getId();
+
+    String getName();
+
+    String getDescription();
+
+    Date getDate();
+
+    Integer getTypeId();
+
+    Float getRank();
+}
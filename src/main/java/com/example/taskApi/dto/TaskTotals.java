@@ -0,0 +1,11 @@
+package com.example.taskApi.dto;
+
+/**
+ * общее число задач и число задач без типа и без тега
+ *
+ * @param taskCount всего задач
+ * @param untypedCount задач без типа
+ * @param untaggedCount задач без тега
+ */
+public record TaskTotals(long taskCount, long untypedCount, long untaggedCount) {
+}
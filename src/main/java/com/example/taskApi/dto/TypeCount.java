@@ -0,0 +1,11 @@
+package com.example.taskApi.dto;
+
+/**
+ * тип задачи с числом задач этого типа
+ *
+ * @param id id типа
+ * @param name имя типа
+ * @param taskCount число задач
+ */
+public record TypeCount(int id, String name, long taskCount) {
+}
@@ -1,23 +1,53 @@
 package com.example.taskApi.models;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import jakarta.persistence.*;
+import org.hibernate.annotations.OptimisticLock;
+import org.hibernate.annotations.SQLOrder;
+import org.hibernate.annotations.UpdateTimestamp;
 
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.Comparator;
+import java.util.Date;
 import java.util.List;
-import java.util.stream.Collectors;
 
 @Entity
 @Table(name = "tag")
+@JsonIgnoreProperties({"hibernateLazyInitializer", "handler"})
 public class Tag {
+    /**
+     * по убыванию id типа, задачи без типа в конце; сравнивает int без упаковки
+     */
+    static final Comparator<Task> TYPE_DESC_NULLS_LAST = (task1, task2) -> {
+        TaskType type1 = task1.getType();
+        TaskType type2 = task2.getType();
+        if (type1 == null) {
+            return type2 == null ? 0 : 1;
+        }
+        if (type2 == null) {
+            return -1;
+        }
+        return Integer.compare(type2.getId(), type1.getId());
+    };
+
     @Id
     @GeneratedValue(strategy = GenerationType.AUTO)
     private int id;
     @Column(name = "name")
     private String name;
-    @OneToMany(mappedBy = "tag", fetch = FetchType.EAGER, cascade = CascadeType.REMOVE, orphanRemoval = true)
+    @OneToMany(mappedBy = "tag", fetch = FetchType.LAZY, cascade = CascadeType.REMOVE, orphanRemoval = true)
+    @SQLOrder("id_task_type DESC NULLS LAST, id")
+    @OptimisticLock(excluded = true)
     List<Task> tasks;
+    @UpdateTimestamp
+    @Column(name = "updated_at")
+    @JsonIgnore
+    private Date updatedAt;
+    @Version
+    @Column(name = "version")
+    @JsonIgnore
+    private long version;
 
     public Tag() {
         this.tasks = new ArrayList<>();
@@ -44,6 +74,14 @@ public class Tag {
         this.name = name;
     }
 
+    public Date getUpdatedAt() {
+        return updatedAt;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
     public void addTask(Task task) {
         this.tasks.add(task);
         task.setTag(this);
@@ -62,8 +100,12 @@ public class Tag {
         this.tasks = tasks;
     }
 
+    /**
+     * сортирует задачи по убыванию id типа, задачи без типа в конце;
+     * загруженный из базы список уже отсортирован (@SQLOrder), сортировка нужна только после изменений в памяти
+     */
     public void sortTasksDesc() {
-        Collections.sort(tasks, Comparator.comparing(Task::getTypeId).reversed());
+        tasks.sort(TYPE_DESC_NULLS_LAST);
     }
 
 
@@ -5,12 +5,16 @@ import java.util.Objects;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import jakarta.persistence.*;
+import org.hibernate.annotations.DynamicUpdate;
+import org.hibernate.annotations.UpdateTimestamp;
 
 @Entity
 @Table(name = "task")
+@DynamicUpdate
 public class Task {
     @Id
-    @GeneratedValue(strategy = GenerationType.AUTO)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "task_seq")
+    @SequenceGenerator(name = "task_seq", sequenceName = "task_seq", allocationSize = 50)
     private int id;
     @Column(name = "name")
     private String name;
@@ -18,14 +22,22 @@ public class Task {
     private String description;
     @Column(name = "date")
     private Date date;
-    @ManyToOne(fetch = FetchType.EAGER, optional = true)
+    @ManyToOne(fetch = FetchType.LAZY, optional = true)
     @JoinColumn(name="id_task_type", nullable = true)
     //@JsonIgnore
     private TaskType type;
-    @ManyToOne(fetch = FetchType.EAGER, optional = true)
+    @ManyToOne(fetch = FetchType.LAZY, optional = true)
     @JoinColumn(name="id_tag", nullable = true)
     @JsonIgnore
     private Tag tag;
+    @UpdateTimestamp
+    @Column(name = "updated_at")
+    @JsonIgnore
+    private Date updatedAt;
+    @Version
+    @Column(name = "version")
+    @JsonIgnore
+    private long version;
 
     public Task() {
 
@@ -87,6 +99,14 @@ public class Task {
         this.tag = tag;
     }
 
+    public Date getUpdatedAt() {
+        return updatedAt;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -100,7 +120,7 @@ public class Task {
         return Objects.hash(id);
     }
 
-    public int getTypeId() {
-        return type.getId();
+    public Integer getTypeId() {
+        return type == null ? null : type.getId();
     }
 }
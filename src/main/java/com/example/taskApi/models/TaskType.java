@@ -1,5 +1,6 @@
 package com.example.taskApi.models;
 
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import jakarta.persistence.*;
 
 import java.util.List;
@@ -7,6 +8,7 @@ import java.util.Objects;
 
 @Entity
 @Table(name = "task_type")
+@JsonIgnoreProperties({"hibernateLazyInitializer", "handler"})
 public class TaskType {
     @Id
     @GeneratedValue(strategy = GenerationType.AUTO)
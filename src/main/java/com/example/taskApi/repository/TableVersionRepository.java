@@ -0,0 +1,25 @@
+package com.example.taskApi.repository;
+
+import com.example.taskApi.dto.TableVersion;
+
+import java.util.Collection;
+
+public interface TableVersionRepository {
+    /**
+     * общая версия таблиц: сумма счетчиков из table_version и числа строк журнала table_change
+     * и время последнего изменения; один запрос по первичному ключу и индексу журнала, без просмотра самих таблиц
+     *
+     * @param tables имена таблиц
+     * @return версия, которая растет при любом изменении любой из таблиц
+     */
+    TableVersion findTableVersion(Collection<String> tables);
+
+    /**
+     * переносит строки журнала table_change в счетчики table_version, не меняя версию таблиц;
+     * вызывается в транзакции
+     *
+     * @param tables имена таблиц
+     * @return число перенесенных строк журнала
+     */
+    long compactTableVersions(Collection<String> tables);
+}
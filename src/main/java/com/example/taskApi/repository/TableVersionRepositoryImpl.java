@@ -0,0 +1,60 @@
+package com.example.taskApi.repository;
+
+import com.example.taskApi.dto.TableVersion;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+
+import java.util.Collection;
+import java.util.Date;
+
+public class TableVersionRepositoryImpl implements TableVersionRepository {
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public TableVersion findTableVersion(Collection<String> tables) {
+        // один запрос - один снимок: перенос журнала в счетчик другой транзакцией виден целиком или не виден
+        Object[] row = (Object[]) entityManager.createNativeQuery("""
+                        SELECT (SELECT COALESCE(SUM(version), 0) FROM table_version WHERE name IN (:tables))
+                             + (SELECT COUNT(*) FROM table_change WHERE name IN (:tables)),
+                               (SELECT MAX(modified_at) FROM (
+                                    SELECT modified_at FROM table_version WHERE name IN (:tables)
+                                    UNION ALL
+                                    SELECT changed_at FROM table_change WHERE name IN (:tables)) m)
+                        """)
+                .setParameter("tables", tables)
+                .getSingleResult();
+        return new TableVersion(((Number) row[0]).longValue(), (Date) row[1]);
+    }
+
+    @Override
+    public long compactTableVersions(Collection<String> tables) {
+        long compacted = 0;
+        for (String table : tables) {
+            Object[] last = (Object[]) entityManager.createNativeQuery(
+                            "SELECT MAX(id), MAX(changed_at) FROM table_change WHERE name = :name")
+                    .setParameter("name", table)
+                    .getSingleResult();
+            if (last[0] == null) {
+                continue;
+            }
+            // удаляются только строки до last: строки, вставленные позже, остаются в журнале до следующего переноса;
+            // счетчик увеличивается на число действительно удаленных строк, поэтому сумма не меняется
+            int deleted = entityManager.createNativeQuery("DELETE FROM table_change WHERE name = :name AND id <= :last")
+                    .setParameter("name", table)
+                    .setParameter("last", ((Number) last[0]).longValue())
+                    .executeUpdate();
+            entityManager.createNativeQuery("""
+                            UPDATE table_version SET version = version + :deleted,
+                                   modified_at = CASE WHEN modified_at < :changedAt THEN :changedAt ELSE modified_at END
+                             WHERE name = :name
+                            """)
+                    .setParameter("deleted", deleted)
+                    .setParameter("changedAt", last[1])
+                    .setParameter("name", table)
+                    .executeUpdate();
+            compacted += deleted;
+        }
+        return compacted;
+    }
+}
@@ -1,13 +1,106 @@
 package com.example.taskApi.repository;
 
+import com.example.taskApi.dto.TableVersion;
+import com.example.taskApi.dto.TagSummary;
 import com.example.taskApi.models.Tag;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
+import java.util.Optional;
+
+public interface TagRepository  extends JpaRepository<Tag, Integer>, TableVersionRepository {
+    @Override
+    @EntityGraph(attributePaths = {"tasks", "tasks.type"})
+    List<Tag> findAll();
+
+    @Override
+    @EntityGraph(attributePaths = {"tasks", "tasks.type"})
+    Optional<Tag> findById(Integer id);
+
+    /**
+     * @return версия списков тегов: теги, их задачи и типы задач
+     */
+    default TableVersion findTableVersion() {
+        return findTableVersion(List.of("tag", "task", "task_type"));
+    }
+
+    @Cacheable("tags")
+    @Query("SELECT new com.example.taskApi.dto.TagSummary(t.id, t.name) FROM Tag t WHERE t.id = :id")
+    Optional<TagSummary> findSummaryById(@Param("id") int id);
+
+    @Override
+    @CacheEvict(cacheNames = "tags", key = "#p0.id")
+    <S extends Tag> S save(S entity);
+
+    @Override
+    @CacheEvict(cacheNames = "tags", key = "#p0.id")
+    <S extends Tag> S saveAndFlush(S entity);
+
+    @Override
+    @CacheEvict(cacheNames = "tags", allEntries = true)
+    <S extends Tag> List<S> saveAll(Iterable<S> entities);
+
+    @Override
+    @CacheEvict(cacheNames = "tags", allEntries = true)
+    <S extends Tag> List<S> saveAllAndFlush(Iterable<S> entities);
+
+    @Override
+    @CacheEvict(cacheNames = "tags", key = "#p0")
+    void deleteById(Integer id);
+
+    @Override
+    @CacheEvict(cacheNames = "tags", key = "#p0.id")
+    void delete(Tag entity);
+
+    @Override
+    @CacheEvict(cacheNames = "tags", allEntries = true)
+    void deleteAllById(Iterable<? extends Integer> ids);
+
+    @Override
+    @CacheEvict(cacheNames = "tags", allEntries = true)
+    void deleteAll(Iterable<? extends Tag> entities);
+
+    @Override
+    @CacheEvict(cacheNames = "tags", allEntries = true)
+    void deleteAll();
+
+    @Override
+    @CacheEvict(cacheNames = "tags", allEntries = true)
+    void deleteAllInBatch(Iterable<Tag> entities);
+
+    @Override
+    @CacheEvict(cacheNames = "tags", allEntries = true)
+    void deleteAllByIdInBatch(Iterable<Integer> ids);
+
+    @Override
+    @CacheEvict(cacheNames = "tags", allEntries = true)
+    void deleteAllInBatch();
+
+    @Transactional
+    @Modifying
+    @CacheEvict(cacheNames = "tags", key = "#p0")
+    @Query("DELETE FROM Tag t WHERE t.id = :id")
+    int deleteTagById(@Param("id") int id);
+
+    @Query("SELECT new com.example.taskApi.dto.TagSummary(t.id, t.name) FROM Tag t " +
+            "WHERE EXISTS (SELECT 1 FROM Task ts WHERE ts.tag = t) ORDER BY t.id")
+    List<TagSummary> findAllWithTasks();
+
+    @Query("SELECT new com.example.taskApi.dto.TagSummary(t.id, t.name, COUNT(ts)) FROM Task ts " +
+            "JOIN ts.tag t GROUP BY t.id, t.name ORDER BY t.id")
+    List<TagSummary> findAllWithTaskCounts();
+
+    @Query("SELECT new com.example.taskApi.dto.TagSummary(t.id, t.name, COUNT(ts)) FROM Tag t " +
+            "LEFT JOIN t.tasks ts GROUP BY t.id, t.name ORDER BY t.id")
+    List<TagSummary> countTasksByTag();
 
-public interface TagRepository  extends JpaRepository<Tag, Integer> {
     /*@Query(value = "SELECT t.id, t.name FROM tag t " +
             "LEFT JOIN task ts ON ts.id_tag = t.id " +
             "LEFT JOIN task_type tt ON ts.id_task_type = tt.id " +
@@ -0,0 +1,69 @@
+package com.example.taskApi.repository;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.sql.Timestamp;
+import java.util.Date;
+
+/**
+ * выгружает все задачи курсором JDBC напрямую в json, не загружая таблицу в память
+ */
+@Repository
+public class TaskExportRepository {
+    private static final String SELECT_ALL = "SELECT t.id, t.name, t.description, t.date, " +
+            "tt.id AS type_id, tt.name AS type_name FROM task t " +
+            "LEFT JOIN task_type tt ON t.id_task_type = tt.id ORDER BY t.id";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+
+    public TaskExportRepository(DataSource dataSource, PlatformTransactionManager transactionManager,
+                                @Value("${taskapi.export.fetch-size:1000}") int fetchSize) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.jdbcTemplate.setFetchSize(fetchSize);
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setReadOnly(true);
+    }
+
+    /**
+     * пишет все задачи в генератор по одной строке;
+     * курсор PostgreSQL работает только внутри транзакции, поэтому выборка идет в ней
+     *
+     * @param generator генератор json, открытый массив задач
+     */
+    public void writeAll(JsonGenerator generator) {
+        transactionTemplate.executeWithoutResult(status -> jdbcTemplate.query(SELECT_ALL, rs -> {
+            try {
+                generator.writeStartObject();
+                generator.writeNumberField("id", rs.getInt("id"));
+                generator.writeStringField("name", rs.getString("name"));
+                generator.writeStringField("description", rs.getString("description"));
+                Timestamp date = rs.getTimestamp("date");
+                generator.writeFieldName("date");
+                generator.writeObject(date == null ? null : new Date(date.getTime()));
+                int typeId = rs.getInt("type_id");
+                if (rs.wasNull()) {
+                    generator.writeNullField("type");
+                    generator.writeNullField("typeId");
+                } else {
+                    generator.writeObjectFieldStart("type");
+                    generator.writeNumberField("id", typeId);
+                    generator.writeStringField("name", rs.getString("type_name"));
+                    generator.writeEndObject();
+                    generator.writeNumberField("typeId", typeId);
+                }
+                generator.writeEndObject();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }));
+    }
+}
@@ -0,0 +1,16 @@
+package com.example.taskApi.repository;
+
+import com.example.taskApi.dto.TaskPatch;
+
+public interface TaskPatchRepository {
+    /**
+     * меняет переданные поля задачи одним UPDATE без предварительной выборки;
+     * версия задачи увеличивается, при expectedVersion строка меняется, только если версия совпала
+     *
+     * @param id id задачи
+     * @param patch изменяемые поля, хотя бы одно
+     * @param expectedVersion ожидаемая версия задачи, null - без проверки
+     * @return число измененных строк: 0, если задачи нет или версия не совпала
+     */
+    int patch(int id, TaskPatch patch, Long expectedVersion);
+}
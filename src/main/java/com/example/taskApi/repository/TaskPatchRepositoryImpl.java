@@ -0,0 +1,53 @@
+package com.example.taskApi.repository;
+
+import com.example.taskApi.dto.TaskPatch;
+import com.example.taskApi.models.Task;
+import com.example.taskApi.models.TaskType;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaUpdate;
+import jakarta.persistence.criteria.Path;
+import jakarta.persistence.criteria.Root;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Date;
+
+public class TaskPatchRepositoryImpl implements TaskPatchRepository {
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    @Transactional
+    public int patch(int id, TaskPatch patch, Long expectedVersion) {
+        if (patch.isEmpty()) {
+            throw new IllegalArgumentException("patch has no fields");
+        }
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaUpdate<Task> update = cb.createCriteriaUpdate(Task.class);
+        Root<Task> task = update.from(Task.class);
+        if (patch.name() != null) {
+            update.set(task.<String>get("name"), patch.name());
+        }
+        if (patch.description() != null) {
+            update.set(task.<String>get("description"), patch.description());
+        }
+        if (patch.date() != null) {
+            update.set(task.<Date>get("date"), patch.date());
+        }
+        if (patch.typeId() != null) {
+            update.set(task.<TaskType>get("type"), entityManager.getReference(TaskType.class, patch.typeId()));
+        }
+        Path<Long> version = task.get("version");
+        update.set(version, cb.sum(version, 1L));
+        update.set(task.<Date>get("updatedAt"), new Date());
+        if (expectedVersion == null) {
+            update.where(cb.equal(task.get("id"), id));
+        } else {
+            update.where(cb.equal(task.get("id"), id), cb.equal(version, expectedVersion));
+        }
+        int updated = entityManager.createQuery(update).executeUpdate();
+        entityManager.clear();
+        return updated;
+    }
+}
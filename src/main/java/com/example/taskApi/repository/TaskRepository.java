@@ -1,17 +1,97 @@
 package com.example.taskApi.repository;
 
+import com.example.taskApi.dto.DayCount;
+import com.example.taskApi.dto.TableVersion;
+import com.example.taskApi.dto.TaskTotals;
+import com.example.taskApi.dto.TaskSearchHit;
+import com.example.taskApi.dto.TypeCount;
+import com.example.taskApi.models.Tag;
 import com.example.taskApi.models.Task;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Collection;
+import java.util.Date;
 import java.util.List;
+import java.util.Optional;
 
-public interface TaskRepository extends JpaRepository<Task, Integer> {
-    @Query(value = "SELECT t.* FROM task t " +
-            "INNER JOIN task_type tt ON t.id_task_type = tt.id " +
-            "INNER JOIN tag tg ON t.id_tag = tg.id " +
-            "WHERE t.date BETWEEN TO_TIMESTAMP(:date_value_start, 'yyyy-MM-dd HH24:MI:SS') " +
-            "AND TO_TIMESTAMP(:date_value_end, 'yyyy-MM-dd HH24:MI:SS') ORDER BY tt.id DESC", nativeQuery = true)
-    List<Task> findByDateWithTypesSorted(@Param("date_value_start") String date_start, @Param("date_value_end") String date_end);
+public interface TaskRepository extends JpaRepository<Task, Integer>, TaskSearchRepository, TaskPatchRepository,
+        TableVersionRepository {
+    @Query("SELECT t FROM Task t " +
+            "JOIN FETCH t.type tt " +
+            "JOIN t.tag tg " +
+            "WHERE t.date >= :date_value_start AND t.date < :date_value_end ORDER BY tt.id DESC, t.id")
+    List<Task> findByDateWithTypesSorted(@Param("date_value_start") Date date_start, @Param("date_value_end") Date date_end);
+
+    @EntityGraph(attributePaths = "type")
+    List<Task> findByIdGreaterThanOrderByIdAsc(int id, Pageable pageable);
+
+    @Query(value = "SELECT t.id AS \"id\", t.name AS \"name\", t.description AS \"description\", t.date AS \"date\", " +
+            "t.id_task_type AS \"typeId\", ts_rank(t.search_vector, q) AS \"rank\" " +
+            "FROM task t, plainto_tsquery('russian', :q) q " +
+            "WHERE t.search_vector @@ q ORDER BY 6 DESC, t.id LIMIT :limit", nativeQuery = true)
+    List<TaskSearchHit> searchFullText(@Param("q") String q, @Param("limit") int limit);
+
+    /**
+     * @return версия списка задач: задачи и их типы
+     */
+    default TableVersion findTableVersion() {
+        return findTableVersion(List.of("task", "task_type"));
+    }
+
+    @Query("SELECT new com.example.taskApi.dto.TaskTotals(COUNT(t), " +
+            "COALESCE(SUM(CASE WHEN t.type IS NULL THEN 1L ELSE 0L END), 0L), " +
+            "COALESCE(SUM(CASE WHEN t.tag IS NULL THEN 1L ELSE 0L END), 0L)) FROM Task t")
+    TaskTotals countTotals();
+
+    @Query("SELECT new com.example.taskApi.dto.TypeCount(tt.id, tt.name, COUNT(t)) FROM TaskType tt " +
+            "LEFT JOIN Task t ON t.type = tt GROUP BY tt.id, tt.name ORDER BY tt.id")
+    List<TypeCount> countByType();
+
+    @Query("SELECT new com.example.taskApi.dto.DayCount(CAST(t.date AS LocalDate), COUNT(t)) FROM Task t " +
+            "WHERE t.date >= :date_value_start AND t.date < :date_value_end " +
+            "GROUP BY CAST(t.date AS LocalDate) ORDER BY CAST(t.date AS LocalDate)")
+    List<DayCount> countByDay(@Param("date_value_start") Date date_start, @Param("date_value_end") Date date_end);
+
+    @Override
+    @EntityGraph(attributePaths = "type")
+    List<Task> findAll();
+
+    @Override
+    @EntityGraph(attributePaths = "type")
+    Optional<Task> findById(Integer id);
+
+    @Transactional
+    @Modifying(clearAutomatically = true)
+    @Query("UPDATE Task t SET t.tag = :tag, t.updatedAt = CURRENT_TIMESTAMP, t.version = t.version + 1 WHERE t.id IN :ids")
+    int assignTag(@Param("tag") Tag tag, @Param("ids") Collection<Integer> ids);
+
+    @Transactional
+    @Modifying(clearAutomatically = true)
+    @Query("UPDATE Task t SET t.tag = null, t.updatedAt = CURRENT_TIMESTAMP, t.version = t.version + 1 WHERE t.tag.id = :tagId AND t.id IN :ids")
+    int removeTag(@Param("tagId") int tagId, @Param("ids") Collection<Integer> ids);
+
+    @Transactional
+    @Modifying
+    @Query(value = "DELETE FROM task WHERE id IN (SELECT id FROM task LIMIT :chunk)", nativeQuery = true)
+    int deleteChunk(@Param("chunk") int chunk);
+
+    @Transactional
+    @Modifying
+    @Query(value = "DELETE FROM task WHERE id IN (SELECT id FROM task WHERE id_tag = :tagId LIMIT :chunk)", nativeQuery = true)
+    int deleteChunkByTag(@Param("tagId") int tagId, @Param("chunk") int chunk);
+
+    @Transactional
+    @Modifying
+    @Query(value = "DELETE FROM task WHERE id IN (SELECT id FROM task " +
+            "WHERE (CAST(:from AS TIMESTAMP) IS NULL OR date >= :from) " +
+            "AND (CAST(:to AS TIMESTAMP) IS NULL OR date < :to) " +
+            "AND (CAST(:typeId AS INTEGER) IS NULL OR id_task_type = :typeId) LIMIT :chunk)", nativeQuery = true)
+    int deleteChunkByFilter(@Param("from") Date from, @Param("to") Date to, @Param("typeId") Integer typeId,
+                            @Param("chunk") int chunk);
 }
@@ -0,0 +1,17 @@
+package com.example.taskApi.repository;
+
+import com.example.taskApi.dto.TaskSearch;
+
+import java.util.List;
+import java.util.Map;
+
+public interface TaskSearchRepository {
+    /**
+     * ищет задачи и выбирает из базы только запрошенные поля, без создания сущностей
+     *
+     * @param search условия поиска
+     * @return строки с запрошенными полями в порядке запроса
+     * @throws IllegalArgumentException если поле вывода или сортировки неизвестно
+     */
+    List<Map<String, Object>> search(TaskSearch search);
+}
@@ -0,0 +1,114 @@
+package com.example.taskApi.repository;
+
+import com.example.taskApi.dto.TaskSearch;
+import com.example.taskApi.models.Tag;
+import com.example.taskApi.models.Task;
+import com.example.taskApi.models.TaskType;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.Tuple;
+import jakarta.persistence.criteria.*;
+import org.springframework.data.domain.Sort;
+
+import java.util.*;
+
+public class TaskSearchRepositoryImpl implements TaskSearchRepository {
+    static final List<String> FIELDS = List.of("id", "name", "description", "date", "typeId", "typeName", "tagId", "tagName");
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public List<Map<String, Object>> search(TaskSearch search) {
+        List<String> fields = search.fields() == null || search.fields().isEmpty() ? FIELDS : search.fields();
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Tuple> query = cb.createTupleQuery();
+        Paths paths = new Paths(query.from(Task.class));
+
+        List<Selection<?>> selections = new ArrayList<>(fields.size());
+        for (String field : fields) {
+            selections.add(paths.get(field).alias(field));
+        }
+        query.multiselect(selections);
+
+        List<Predicate> predicates = new ArrayList<>();
+        if (search.typeId() != null) {
+            predicates.add(cb.equal(paths.get("typeId"), search.typeId()));
+        }
+        if (search.tagId() != null) {
+            predicates.add(cb.equal(paths.get("tagId"), search.tagId()));
+        }
+        if (search.namePrefix() != null && !search.namePrefix().isEmpty()) {
+            predicates.add(cb.like(paths.task.get("name"), escapeLike(search.namePrefix()) + "%", '\\'));
+        }
+        if (search.from() != null) {
+            predicates.add(cb.greaterThanOrEqualTo(paths.task.get("date"), search.from()));
+        }
+        if (search.to() != null) {
+            predicates.add(cb.lessThan(paths.task.get("date"), search.to()));
+        }
+        query.where(predicates.toArray(new Predicate[0]));
+
+        List<Order> orders = new ArrayList<>();
+        for (Sort.Order order : search.sort()) {
+            Expression<?> path = paths.get(order.getProperty());
+            orders.add(order.isAscending() ? cb.asc(path) : cb.desc(path));
+        }
+        query.orderBy(orders);
+
+        List<Tuple> rows = entityManager.createQuery(query)
+                .setMaxResults(search.limit())
+                .getResultList();
+        List<Map<String, Object>> result = new ArrayList<>(rows.size());
+        for (Tuple row : rows) {
+            Map<String, Object> item = new LinkedHashMap<>();
+            for (String field : fields) {
+                item.put(field, row.get(field));
+            }
+            result.add(item);
+        }
+        return result;
+    }
+
+    private static String escapeLike(String value) {
+        return value.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+
+    /**
+     * выражения для полей поиска; соединения с типом и тегом добавляются, только если нужны их имена
+     */
+    private static final class Paths {
+        final Root<Task> task;
+        private Join<Task, TaskType> type;
+        private Join<Task, Tag> tag;
+
+        Paths(Root<Task> task) {
+            this.task = task;
+        }
+
+        Expression<?> get(String field) {
+            return switch (field) {
+                case "id", "name", "description", "date" -> task.get(field);
+                case "typeId" -> task.get("type").get("id");
+                case "tagId" -> task.get("tag").get("id");
+                case "typeName" -> type().get("name");
+                case "tagName" -> tag().get("name");
+                default -> throw new IllegalArgumentException("unknown field: " + field);
+            };
+        }
+
+        private Join<Task, TaskType> type() {
+            if (type == null) {
+                type = task.join("type", JoinType.LEFT);
+            }
+            return type;
+        }
+
+        private Join<Task, Tag> tag() {
+            if (tag == null) {
+                tag = task.join("tag", JoinType.LEFT);
+            }
+            return tag;
+        }
+    }
+}
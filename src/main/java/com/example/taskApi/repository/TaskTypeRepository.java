@@ -1,8 +1,71 @@
 package com.example.taskApi.repository;
 
 import com.example.taskApi.models.TaskType;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.Cacheable;
 import org.springframework.data.jpa.repository.JpaRepository;
 
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * типы задач; поиск по id и имени кэшируется, любое изменение через репозиторий сбрасывает оба кэша.
+ * Из кэша возвращается один и тот же отсоединенный объект для всех потоков: его можно только читать
+ * и ссылаться на него из задач, менять тип нужно через загрузку в транзакции и save
+ */
 public interface TaskTypeRepository extends JpaRepository<TaskType, Integer> {
+    @Cacheable("taskTypesByName")
     TaskType getByName(String name);
+
+    @Override
+    @Cacheable("taskTypes")
+    Optional<TaskType> findById(Integer id);
+
+    @Override
+    @CacheEvict(cacheNames = {"taskTypes", "taskTypesByName"}, allEntries = true)
+    <S extends TaskType> S save(S entity);
+
+    @Override
+    @CacheEvict(cacheNames = {"taskTypes", "taskTypesByName"}, allEntries = true)
+    <S extends TaskType> S saveAndFlush(S entity);
+
+    @Override
+    @CacheEvict(cacheNames = {"taskTypes", "taskTypesByName"}, allEntries = true)
+    <S extends TaskType> List<S> saveAll(Iterable<S> entities);
+
+    @Override
+    @CacheEvict(cacheNames = {"taskTypes", "taskTypesByName"}, allEntries = true)
+    <S extends TaskType> List<S> saveAllAndFlush(Iterable<S> entities);
+
+    @Override
+    @CacheEvict(cacheNames = {"taskTypes", "taskTypesByName"}, allEntries = true)
+    void deleteById(Integer id);
+
+    @Override
+    @CacheEvict(cacheNames = {"taskTypes", "taskTypesByName"}, allEntries = true)
+    void delete(TaskType entity);
+
+    @Override
+    @CacheEvict(cacheNames = {"taskTypes", "taskTypesByName"}, allEntries = true)
+    void deleteAllById(Iterable<? extends Integer> ids);
+
+    @Override
+    @CacheEvict(cacheNames = {"taskTypes", "taskTypesByName"}, allEntries = true)
+    void deleteAll(Iterable<? extends TaskType> entities);
+
+    @Override
+    @CacheEvict(cacheNames = {"taskTypes", "taskTypesByName"}, allEntries = true)
+    void deleteAll();
+
+    @Override
+    @CacheEvict(cacheNames = {"taskTypes", "taskTypesByName"}, allEntries = true)
+    void deleteAllInBatch(Iterable<TaskType> entities);
+
+    @Override
+    @CacheEvict(cacheNames = {"taskTypes", "taskTypesByName"}, allEntries = true)
+    void deleteAllByIdInBatch(Iterable<Integer> ids);
+
+    @Override
+    @CacheEvict(cacheNames = {"taskTypes", "taskTypesByName"}, allEntries = true)
+    void deleteAllInBatch();
 }
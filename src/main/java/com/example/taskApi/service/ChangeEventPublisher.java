@@ -0,0 +1,215 @@
+package com.example.taskApi.service;
+
+import com.example.taskApi.dto.ChangeEvent;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * рассылает события изменений подписчикам SSE и хранит последние события в кольцевом буфере,
+ * чтобы переподключившийся клиент получил пропущенные события по Last-Event-ID.
+ * Id события для клиента - "эпоха-номер", эпоха - время запуска процесса: id из прошлого запуска
+ * распознается, и клиент получает reset. Под блокировкой событие только добавляется в буфер
+ * и в ограниченные очереди подписчиков; отправка идет из очереди в отдельном виртуальном потоке
+ * на подписчика, поэтому медленный клиент не задерживает запросы на запись.
+ * Подписчик, чья очередь переполнена или которому не удалось отправить, отключается
+ */
+@Service
+public class ChangeEventPublisher {
+    /**
+     * событие, которое получает клиент, чей Last-Event-ID уже вытеснен из буфера
+     * или относится к прошлому запуску: ему нужно заново загрузить данные
+     */
+    public static final String RESET_EVENT = "reset";
+
+    private final ChangeEvent[] buffer;
+    private final long timeout;
+    private final int queueSize;
+    private final String epoch = String.valueOf(System.currentTimeMillis());
+    private final List<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+    private final ExecutorService senders = Executors.newVirtualThreadPerTaskExecutor();
+    private long lastId;
+    private long changedRows;
+
+    public ChangeEventPublisher(@Value("${taskapi.events.buffer-size:1000}") int bufferSize,
+                                @Value("${taskapi.events.timeout:30m}") Duration timeout,
+                                @Value("${taskapi.events.queue-size:1000}") int queueSize) {
+        this.buffer = new ChangeEvent[bufferSize];
+        this.timeout = timeout.toMillis();
+        this.queueSize = queueSize;
+    }
+
+    /**
+     * публикует событие об изменении одной строки
+     *
+     * @param type тип события
+     * @param data данные события
+     */
+    public void publish(String type, Object data) {
+        publish(type, data, 1);
+    }
+
+    /**
+     * сохраняет событие в буфер и ставит его в очереди подписчиков; отправка идет после снятия блокировки
+     *
+     * @param type тип события
+     * @param data данные события
+     * @param rows число строк, измененных событием
+     */
+    public void publish(String type, Object data, long rows) {
+        List<Subscriber> ready = new ArrayList<>();
+        synchronized (this) {
+            changedRows += rows;
+            ChangeEvent event = new ChangeEvent(++lastId, type, data);
+            buffer[(int) (event.id() % buffer.length)] = event;
+            for (Subscriber subscriber : subscribers) {
+                if (subscriber.queue.offer(event)) {
+                    ready.add(subscriber);
+                } else {
+                    subscribers.remove(subscriber);
+                    ready.add(subscriber.overflow());
+                }
+            }
+        }
+        ready.forEach(this::drain);
+    }
+
+    /**
+     * @return число строк, измененных опубликованными событиями этого запуска; массовое событие
+     * учитывается по числу затронутых строк
+     */
+    public synchronized long getChangedRows() {
+        return changedRows;
+    }
+
+    /**
+     * подписывает клиента на события; при заданном lastEventId сначала отправляет
+     * события из буфера после него или событие reset, если часть из них уже вытеснена,
+     * id относится к другому запуску или не распознан
+     *
+     * @param lastEventId id последнего полученного клиентом события
+     * @return поток событий
+     */
+    public SseEmitter subscribe(String lastEventId) {
+        SseEmitter emitter = new SseEmitter(timeout);
+        Subscriber subscriber = new Subscriber(emitter, new ArrayBlockingQueue<>(queueSize));
+        synchronized (this) {
+            if (lastEventId != null) {
+                long from = sequenceOf(lastEventId);
+                long oldest = Math.max(1, lastId - buffer.length + 1);
+                if (from < 0 || from > lastId || from + 1 < oldest || lastId - from > queueSize) {
+                    subscriber.queue.add(new ChangeEvent(lastId, RESET_EVENT, null));
+                } else {
+                    for (long id = from + 1; id <= lastId; id++) {
+                        subscriber.queue.add(buffer[(int) (id % buffer.length)]);
+                    }
+                }
+            }
+            subscribers.add(subscriber);
+        }
+        emitter.onCompletion(() -> subscribers.remove(subscriber));
+        emitter.onTimeout(() -> subscribers.remove(subscriber));
+        emitter.onError(e -> subscribers.remove(subscriber));
+        drain(subscriber);
+        return emitter;
+    }
+
+    @PreDestroy
+    void shutdown() {
+        senders.shutdownNow();
+    }
+
+    /**
+     * @return номер события из id этого запуска, -1 для id другого запуска или нераспознанного
+     */
+    private long sequenceOf(String eventId) {
+        int dash = eventId.indexOf('-');
+        if (dash < 0 || !eventId.substring(0, dash).equals(epoch)) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(eventId.substring(dash + 1));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * запускает отправку очереди подписчика, если она еще не идет
+     */
+    private void drain(Subscriber subscriber) {
+        if (subscriber.sending.compareAndSet(false, true)) {
+            senders.execute(() -> sendQueued(subscriber));
+        }
+    }
+
+    private void sendQueued(Subscriber subscriber) {
+        do {
+            ChangeEvent event;
+            while (!subscriber.overflowed && (event = subscriber.queue.poll()) != null) {
+                if (!send(subscriber.emitter, event)) {
+                    subscribers.remove(subscriber);
+                    return;
+                }
+            }
+            if (subscriber.overflowed) {
+                // клиент переподключится с последним полученным id и догонит из буфера или получит reset
+                subscribers.remove(subscriber);
+                subscriber.queue.clear();
+                subscriber.emitter.complete();
+                return;
+            }
+            subscriber.sending.set(false);
+            // событие могло прийти между poll и set(false)
+        } while (!subscriber.queue.isEmpty() && subscriber.sending.compareAndSet(false, true));
+    }
+
+    private boolean send(SseEmitter emitter, ChangeEvent event) {
+        try {
+            SseEmitter.SseEventBuilder builder = SseEmitter.event()
+                    .id(epoch + "-" + event.id())
+                    .name(event.type());
+            emitter.send(event.data() == null ? builder.data("") : builder.data(event.data(), MediaType.APPLICATION_JSON));
+            return true;
+        } catch (IOException | IllegalStateException e) {
+            emitter.completeWithError(e);
+            return false;
+        }
+    }
+
+    /**
+     * подписчик и его очередь неотправленных событий
+     */
+    private static final class Subscriber {
+        private final SseEmitter emitter;
+        private final Queue<ChangeEvent> queue;
+        private final AtomicBoolean sending = new AtomicBoolean();
+        private volatile boolean overflowed;
+
+        private Subscriber(SseEmitter emitter, Queue<ChangeEvent> queue) {
+            this.emitter = emitter;
+            this.queue = queue;
+        }
+
+        /**
+         * отмечает переполнение: отправка закроет поток вместо следующего события
+         */
+        private Subscriber overflow() {
+            overflowed = true;
+            return this;
+        }
+    }
+}
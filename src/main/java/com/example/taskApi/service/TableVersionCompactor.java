@@ -0,0 +1,39 @@
+package com.example.taskApi.service;
+
+import com.example.taskApi.repository.TaskRepository;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+
+/**
+ * переносит журнал изменений table_change в счетчики table_version раз в
+ * taskapi.table-version.compact-interval-ms, чтобы журнал не рос. Пишущие транзакции только добавляют
+ * строки в журнал и не ждут друг друга на строке счетчика; счетчик меняет только перенос
+ */
+@Service
+public class TableVersionCompactor {
+    private static final List<String> TABLES = List.of("task", "tag", "task_type");
+
+    private final TaskRepository taskRepository;
+    private final TransactionTemplate transactionTemplate;
+
+    public TableVersionCompactor(TaskRepository taskRepository, PlatformTransactionManager transactionManager) {
+        this.taskRepository = taskRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * переносит журнал одной транзакцией: версия таблиц при этом не меняется
+     *
+     * @return число перенесенных строк журнала
+     */
+    @Scheduled(fixedDelayString = "${taskapi.table-version.compact-interval-ms:10000}",
+            initialDelayString = "${taskapi.table-version.compact-interval-ms:10000}")
+    public long compact() {
+        Long compacted = transactionTemplate.execute(status -> taskRepository.compactTableVersions(TABLES));
+        return compacted == null ? 0 : compacted;
+    }
+}
@@ -0,0 +1,145 @@
+package com.example.taskApi.service;
+
+import com.example.taskApi.dto.TableVersion;
+import com.example.taskApi.dto.TagSummary;
+import com.example.taskApi.models.Tag;
+import com.example.taskApi.models.Task;
+import com.example.taskApi.repository.TagRepository;
+import com.example.taskApi.repository.TaskRepository;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Predicate;
+
+/**
+ * чтение и изменение тегов в явных транзакциях; теги возвращаются уже загруженными
+ * вместе с задачами и их типами, чтобы ответ сериализовался без обращений к базе
+ */
+@Service
+@Transactional(readOnly = true)
+public class TagService {
+    /**
+     * тег после изменения его задач
+     *
+     * @param tag тег с задачами
+     * @param changed изменилась ли задача
+     */
+    public record TagChange(Tag tag, boolean changed) {
+    }
+
+    private final TagRepository tagRepository;
+    private final TaskRepository taskRepository;
+
+    public TagService(TagRepository tagRepository, TaskRepository taskRepository) {
+        this.tagRepository = tagRepository;
+        this.taskRepository = taskRepository;
+    }
+
+    public List<Tag> findAll() {
+        return tagRepository.findAll();
+    }
+
+    /**
+     * все теги, если клиент их еще не видел; версия и список читаются одной транзакцией, с одной реплики
+     *
+     * @param notModified проверка версии по условным заголовкам запроса
+     * @return теги или пусто, если у клиента та же версия
+     */
+    public Optional<List<Tag>> findAllIfModified(Predicate<TableVersion> notModified) {
+        if (notModified.test(tagRepository.findTableVersion())) {
+            return Optional.empty();
+        }
+        return Optional.of(tagRepository.findAll());
+    }
+
+    /**
+     * краткие теги с id задач или их числом, если клиент их еще не видел; версия и список
+     * читаются одной транзакцией
+     *
+     * @param withCounts вместо id задач выводить их число
+     * @param notModified проверка версии по условным заголовкам запроса
+     * @return теги или пусто, если у клиента та же версия
+     */
+    public Optional<List<TagSummary>> findAllWithTasksIfModified(boolean withCounts,
+                                                                 Predicate<TableVersion> notModified) {
+        if (notModified.test(tagRepository.findTableVersion())) {
+            return Optional.empty();
+        }
+        return Optional.of(withCounts ? tagRepository.findAllWithTaskCounts() : tagRepository.findAllWithTasks());
+    }
+
+    public Optional<Tag> findById(int id) {
+        return tagRepository.findById(id);
+    }
+
+    /**
+     * меняет имя тега одной транзакцией
+     *
+     * @param id id тега
+     * @param name новое имя
+     * @param expectedVersion ожидаемая версия тега, null - без проверки
+     * @return измененный тег или пусто, если тега нет
+     * @throws ObjectOptimisticLockingFailureException если версия не совпала или тег изменили до записи
+     */
+    @Transactional
+    public Optional<Tag> rename(int id, String name, Long expectedVersion) {
+        return tagRepository.findById(id).map(tag -> {
+            if (expectedVersion != null && expectedVersion != tag.getVersion()) {
+                throw new ObjectOptimisticLockingFailureException(Tag.class, id);
+            }
+            tag.setName(name);
+            return tagRepository.save(tag);
+        });
+    }
+
+    /**
+     * присваивает тег задаче; тег проверяется по кэшу, изменяется только задача,
+     * затем тег загружается с задачами в той же транзакции (загрузка по id не сбрасывает
+     * изменения в базу сама, поэтому задача записывается сразу)
+     *
+     * @param id id тега
+     * @param taskId id задачи
+     * @return тег с задачами или пусто, если нет тега или задачи
+     */
+    @Transactional
+    public Optional<TagChange> addTask(int id, int taskId) {
+        if (tagRepository.findSummaryById(id).isEmpty()) {
+            return Optional.empty();
+        }
+        Optional<Task> task = taskRepository.findById(taskId);
+        if (task.isEmpty()) {
+            return Optional.empty();
+        }
+        task.get().setTag(tagRepository.getReferenceById(id));
+        taskRepository.saveAndFlush(task.get());
+        return tagRepository.findById(id).map(tag -> new TagChange(tag, true));
+    }
+
+    /**
+     * снимает тег с задачи, если он у нее есть, затем загружает тег с задачами в той же транзакции
+     *
+     * @param id id тега
+     * @param taskId id задачи
+     * @return тег с задачами и признак изменения задачи или пусто, если нет тега или задачи
+     */
+    @Transactional
+    public Optional<TagChange> removeTask(int id, int taskId) {
+        if (tagRepository.findSummaryById(id).isEmpty()) {
+            return Optional.empty();
+        }
+        Optional<Task> task = taskRepository.findById(taskId);
+        if (task.isEmpty()) {
+            return Optional.empty();
+        }
+        Task task1 = task.get();
+        boolean changed = task1.getTag() != null && task1.getTag().getId() == id;
+        if (changed) {
+            task1.setTag(null);
+            taskRepository.saveAndFlush(task1);
+        }
+        return tagRepository.findById(id).map(tag -> new TagChange(tag, changed));
+    }
+}
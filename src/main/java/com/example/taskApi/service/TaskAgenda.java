@@ -0,0 +1,198 @@
+package com.example.taskApi.service;
+
+import com.example.taskApi.config.ReplicaRoutingDataSource;
+import com.example.taskApi.dto.TaskPatch;
+import com.example.taskApi.models.Task;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * готовые списки задач по дням для /tasks/date: задачи дня с типом и тегом по убыванию id типа, затем по id.
+ * День загружается из базы при первом запросе, дальше поддерживается изменениями из Controller
+ * (вставка в отсортированный список), поэтому ответ отдается без запроса и сортировки.
+ * Массовые изменения сбрасывают все дни. День читается из основной базы, а не с реплики, чтобы отставание
+ * реплики не запоминалось на весь ttl, и перечитывается не реже чем раз в taskapi.agenda.ttl:
+ * так ограничена устарелость от изменений других экземпляров приложения
+ */
+@Service
+public class TaskAgenda {
+    /**
+     * по убыванию id типа, затем по id; у задач в списках тип всегда есть
+     */
+    static final Comparator<Task> ORDER = (task1, task2) -> {
+        int byType = Integer.compare(task2.getType().getId(), task1.getType().getId());
+        return byType != 0 ? byType : Integer.compare(task1.getId(), task2.getId());
+    };
+
+    /**
+     * неизменяемый отсортированный список задач дня и время его загрузки из базы
+     */
+    private record Day(List<Task> tasks, long loadedNanos) {
+    }
+
+    private final TaskService taskService;
+    private final long ttlNanos;
+    private final Cache<LocalDate, Day> days;
+    private final Map<Integer, LocalDate> dayOfTask = new ConcurrentHashMap<>();
+    private final Queue<Map.Entry<LocalDate, Day>> evicted = new ConcurrentLinkedQueue<>();
+    private long generation;
+
+    public TaskAgenda(TaskService taskService,
+                      @Value("${taskapi.agenda.max-days:62}") int maxDays,
+                      @Value("${taskapi.agenda.ttl:5m}") Duration ttl) {
+        this.taskService = taskService;
+        this.ttlNanos = ttl.toNanos();
+        this.days = Caffeine.newBuilder()
+                .maximumSize(maxDays)
+                // слушатель вызывается под блокировкой Caffeine, возможно в другом потоке, и монитор здесь брать нельзя:
+                // update держит монитор и ждет эту блокировку в days.put. Обратные ссылки вытесненного дня
+                // убираются под монитором в forgetEvicted
+                .<LocalDate, Day>evictionListener((date, day, cause) -> {
+                    if (day != null) {
+                        evicted.add(Map.entry(date, day));
+                    }
+                })
+                .build();
+    }
+
+    /**
+     * задачи дня; при промахе день читается из основной базы уже отсортированным и запоминается,
+     * если за время чтения не было изменений
+     *
+     * @param date дата
+     * @return неизменяемый отсортированный список задач
+     */
+    public List<Task> get(LocalDate date) {
+        Day day = days.getIfPresent(date);
+        if (day != null && System.nanoTime() - day.loadedNanos() < ttlNanos) {
+            return day.tasks();
+        }
+        long loadedGeneration;
+        synchronized (this) {
+            loadedGeneration = generation;
+        }
+        long loadedNanos = System.nanoTime();
+        // запрос сортирует так же, как ORDER
+        List<Task> sorted;
+        boolean primaryOnly = ReplicaRoutingDataSource.isPrimaryOnly();
+        ReplicaRoutingDataSource.usePrimary(true);
+        try {
+            sorted = List.copyOf(taskService.findByDate(date));
+        } finally {
+            ReplicaRoutingDataSource.usePrimary(primaryOnly);
+        }
+        synchronized (this) {
+            forgetEvicted();
+            if (loadedGeneration == generation) {
+                days.put(date, new Day(sorted, loadedNanos));
+                sorted.forEach(task -> dayOfTask.put(task.getId(), date));
+            }
+        }
+        return sorted;
+    }
+
+    /**
+     * переносит задачу на ее текущее место: убирает из прежнего дня и вставляет в свой день,
+     * если он загружен, а у задачи есть дата, тип и тег
+     *
+     * @param task задача после изменения
+     */
+    public synchronized void update(Task task) {
+        generation++;
+        forgetEvicted();
+        removeFromDay(task.getId());
+        if (task.getDate() == null || task.getType() == null || task.getTag() == null) {
+            return;
+        }
+        LocalDate date = dayOf(task.getDate());
+        Day day = days.getIfPresent(date);
+        if (day == null) {
+            return;
+        }
+        List<Task> tasks = new ArrayList<>(day.tasks().size() + 1);
+        tasks.addAll(day.tasks());
+        int index = Collections.binarySearch(tasks, task, ORDER);
+        tasks.add(index < 0 ? -index - 1 : index, task);
+        days.put(date, new Day(Collections.unmodifiableList(tasks), day.loadedNanos()));
+        dayOfTask.put(task.getId(), date);
+    }
+
+    /**
+     * учитывает частичное изменение задачи, сделанное без ее чтения: сбрасывает ее прежний день и новый день;
+     * если задача могла появиться в списке неизвестного дня (сменился тип), сбрасываются все дни
+     *
+     * @param id id задачи
+     * @param patch измененные поля
+     */
+    public synchronized void patched(int id, TaskPatch patch) {
+        generation++;
+        forgetEvicted();
+        LocalDate previous = dayOfTask.remove(id);
+        if (previous != null) {
+            days.invalidate(previous);
+        } else if (patch.typeId() != null && patch.date() == null) {
+            clear();
+            return;
+        }
+        if (patch.date() != null) {
+            days.invalidate(dayOf(patch.date()));
+        }
+    }
+
+    /**
+     * @param id id удаленной задачи или задачи без тега
+     */
+    public synchronized void remove(int id) {
+        generation++;
+        forgetEvicted();
+        removeFromDay(id);
+    }
+
+    /**
+     * сбрасывает все дни после массовых изменений
+     */
+    public synchronized void clear() {
+        generation++;
+        days.invalidateAll();
+        dayOfTask.clear();
+        evicted.clear();
+    }
+
+    /**
+     * убирает обратные ссылки задач вытесненных дней; если день уже загружен снова, его задачи
+     * заново записаны в dayOfTask при загрузке, и ссылки остаются. Вызывается под монитором
+     */
+    private void forgetEvicted() {
+        Map.Entry<LocalDate, Day> entry;
+        while ((entry = evicted.poll()) != null) {
+            LocalDate date = entry.getKey();
+            if (days.getIfPresent(date) == null) {
+                entry.getValue().tasks().forEach(task -> dayOfTask.remove(task.getId(), date));
+            }
+        }
+    }
+
+    private void removeFromDay(int id) {
+        LocalDate date = dayOfTask.remove(id);
+        Day day = date == null ? null : days.getIfPresent(date);
+        if (day == null) {
+            return;
+        }
+        List<Task> tasks = new ArrayList<>(day.tasks());
+        tasks.removeIf(task -> task.getId() == id);
+        days.put(date, new Day(Collections.unmodifiableList(tasks), day.loadedNanos()));
+    }
+
+    private static LocalDate dayOf(Date date) {
+        return date.toInstant().atZone(ZoneId.systemDefault()).toLocalDate();
+    }
+}
@@ -0,0 +1,34 @@
+package com.example.taskApi.service;
+
+import com.example.taskApi.models.Task;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+
+/**
+ * пишет задачи пачками: вставки одной транзакции уходят пакетами JDBC
+ * (hibernate.jdbc.batch_size), id берутся из последовательности блоками
+ */
+@Service
+public class TaskBatchWriter {
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    /**
+     * сохраняет пачку новых задач одной транзакцией и очищает контекст,
+     * чтобы память не росла от пачки к пачке
+     *
+     * @param tasks новые задачи
+     */
+    @Transactional
+    public void insertAll(List<Task> tasks) {
+        for (Task task : tasks) {
+            entityManager.persist(task);
+        }
+        entityManager.flush();
+        entityManager.clear();
+    }
+}
@@ -0,0 +1,125 @@
+package com.example.taskApi.service;
+
+import com.example.taskApi.dto.TableVersion;
+import com.example.taskApi.models.Task;
+import com.example.taskApi.models.TaskType;
+import com.example.taskApi.repository.TaskRepository;
+import com.example.taskApi.repository.TaskTypeRepository;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Predicate;
+
+/**
+ * чтение и изменение задач в явных транзакциях: чтение - read-only, изменение - чтение и запись одной
+ * транзакцией; задачи возвращаются уже загруженными вместе с типом, поэтому при выключенном
+ * open-in-view соединение возвращается в пул до сериализации ответа
+ */
+@Service
+@Transactional(readOnly = true)
+public class TaskService {
+    private final TaskRepository taskRepository;
+    private final TaskTypeRepository taskTypeRepository;
+
+    public TaskService(TaskRepository taskRepository, TaskTypeRepository taskTypeRepository) {
+        this.taskRepository = taskRepository;
+        this.taskTypeRepository = taskTypeRepository;
+    }
+
+    public List<Task> findAll() {
+        return taskRepository.findAll();
+    }
+
+    /**
+     * все задачи, если клиент их еще не видел: версия таблиц и список читаются одной транзакцией,
+     * то есть с одной реплики, поэтому ETag соответствует отданному списку
+     *
+     * @param notModified проверка версии по условным заголовкам запроса
+     * @return задачи или пусто, если у клиента та же версия
+     */
+    public Optional<List<Task>> findAllIfModified(Predicate<TableVersion> notModified) {
+        if (notModified.test(taskRepository.findTableVersion())) {
+            return Optional.empty();
+        }
+        return Optional.of(taskRepository.findAll());
+    }
+
+    /**
+     * @param after id задачи, после которой начинается страница
+     * @param limit размер страницы
+     * @return задачи с id больше after по возрастанию id
+     */
+    public List<Task> findPage(int after, int limit) {
+        return taskRepository.findByIdGreaterThanOrderByIdAsc(after, PageRequest.of(0, limit));
+    }
+
+    /**
+     * @param date дата
+     * @return задачи с типом и тегом на дату по убыванию id типа, затем по id
+     */
+    public List<Task> findByDate(LocalDate date) {
+        ZoneId zone = ZoneId.systemDefault();
+        return taskRepository.findByDateWithTypesSorted(
+                Date.from(date.atStartOfDay(zone).toInstant()),
+                Date.from(date.plusDays(1).atStartOfDay(zone).toInstant()));
+    }
+
+    public Optional<Task> findById(int id) {
+        return taskRepository.findById(id);
+    }
+
+    /**
+     * меняет имя, описание и дату задачи одной транзакцией
+     *
+     * @param id id задачи
+     * @param name имя
+     * @param description описание
+     * @param date дата
+     * @param expectedVersion ожидаемая версия задачи, null - без проверки
+     * @return измененная задача или пусто, если задачи нет
+     * @throws ObjectOptimisticLockingFailureException если версия не совпала или задачу изменили до записи
+     */
+    @Transactional
+    public Optional<Task> update(int id, String name, String description, Date date, Long expectedVersion) {
+        return taskRepository.findById(id).map(task -> {
+            checkVersion(task, expectedVersion);
+            task.setName(name);
+            task.setDescription(description);
+            task.setDate(date);
+            return taskRepository.save(task);
+        });
+    }
+
+    /**
+     * меняет тип задачи одной транзакцией; тип берется из кэша
+     *
+     * @param id id задачи
+     * @param typeId id типа
+     * @return измененная задача или пусто, если нет задачи или типа
+     * @throws ObjectOptimisticLockingFailureException если задачу изменили до записи
+     */
+    @Transactional
+    public Optional<Task> updateType(int id, int typeId) {
+        Optional<TaskType> type = taskTypeRepository.findById(typeId);
+        if (type.isEmpty()) {
+            return Optional.empty();
+        }
+        return taskRepository.findById(id).map(task -> {
+            task.setType(type.get());
+            return taskRepository.save(task);
+        });
+    }
+
+    private static void checkVersion(Task task, Long expectedVersion) {
+        if (expectedVersion != null && expectedVersion != task.getVersion()) {
+            throw new ObjectOptimisticLockingFailureException(Task.class, task.getId());
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package com.example.taskApi.service;
+
+import com.example.taskApi.dto.DayCount;
+import com.example.taskApi.dto.TagSummary;
+import com.example.taskApi.dto.TaskTotals;
+import com.example.taskApi.dto.TypeCount;
+import com.example.taskApi.repository.TagRepository;
+import com.example.taskApi.repository.TaskRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * снимки счетчиков задач для /stats: всего, без типа и без тега, по типам, по тегам и по дням.
+ * Счетчики считаются запросами GROUP BY в базе и отдаются из снимка; снимок пересчитывается
+ * раз в taskapi.stats.refresh-interval-ms, если его читали, и при чтении после refresh-after-mutations
+ * измененных строк (по событиям ChangeEventPublisher, массовые - по числу строк) с момента снимка.
+ * Счетчики по дням хранятся по интервалам и сбрасываются вместе со снимком; подсчет, начатый до пересчета
+ * снимка, не сохраняется и повторяется. Дата задачи хранится в TIMESTAMP
+ * без пояса по часам hibernate.jdbc.time_zone (по умолчанию пояс приложения), поэтому и границы интервала,
+ * и сегодняшний день считаются в этом поясе, а день задачи в базе - приведением к дате без пересчета
+ */
+@Service
+public class TaskStats {
+    /**
+     * счетчики на момент takenAt
+     *
+     * @param totals всего задач, без типа и без тега
+     * @param types число задач по типам, включая типы без задач
+     * @param tags число задач по тегам, включая теги без задач
+     * @param changedRows число измененных строк по событиям до снимка
+     * @param takenAt время снимка
+     */
+    public record Snapshot(TaskTotals totals, List<TypeCount> types, List<TagSummary> tags, long changedRows,
+                           Date takenAt) {
+    }
+
+    /**
+     * число задач по дням интервала на момент takenAt
+     *
+     * @param days дни с задачами по возрастанию
+     * @param takenAt время подсчета
+     */
+    public record Days(List<DayCount> days, Date takenAt) {
+    }
+
+    private record Range(LocalDate from, LocalDate to) {
+    }
+
+    /**
+     * дни интервала и номер снимка, при котором начался их подсчет
+     */
+    private record CountedDays(Days days, long generation) {
+    }
+
+    private final TaskRepository taskRepository;
+    private final TagRepository tagRepository;
+    private final ChangeEventPublisher changeEventPublisher;
+    private final TransactionTemplate transactionTemplate;
+    private final long refreshAfterMutations;
+    private final ZoneId zone;
+    private final Cache<Range, CountedDays> days;
+    private volatile Snapshot snapshot;
+    private volatile long generation;
+
+    public TaskStats(TaskRepository taskRepository, TagRepository tagRepository,
+                     ChangeEventPublisher changeEventPublisher, PlatformTransactionManager transactionManager,
+                     @Value("${taskapi.stats.refresh-after-mutations:100}") long refreshAfterMutations,
+                     @Value("${taskapi.stats.max-ranges:100}") int maxRanges,
+                     @Value("${spring.jpa.properties.hibernate.jdbc.time_zone:}") String jdbcTimeZone) {
+        this.taskRepository = taskRepository;
+        this.tagRepository = tagRepository;
+        this.changeEventPublisher = changeEventPublisher;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setReadOnly(true);
+        this.refreshAfterMutations = refreshAfterMutations;
+        this.days = Caffeine.newBuilder().maximumSize(maxRanges).build();
+        this.zone = jdbcTimeZone.isBlank() ? ZoneId.systemDefault() : ZoneId.of(jdbcTimeZone);
+    }
+
+    /**
+     * @return сегодняшний день в поясе, в котором считаются дни
+     */
+    public LocalDate today() {
+        return LocalDate.now(zone);
+    }
+
+    /**
+     * @return текущий снимок; при первом чтении или после refresh-after-mutations изменений пересчитывается
+     */
+    public Snapshot current() {
+        Snapshot current = snapshot;
+        if (current != null && !stale(current)) {
+            return current;
+        }
+        synchronized (this) {
+            current = snapshot;
+            return current != null && !stale(current) ? current : refresh();
+        }
+    }
+
+    /**
+     * число задач по дням интервала [from, to); считается при первом запросе интервала после снимка
+     *
+     * @param from первый день
+     * @param to день после последнего
+     * @return дни с задачами
+     */
+    public Days days(LocalDate from, LocalDate to) {
+        current();
+        Range range = new Range(from, to);
+        while (true) {
+            CountedDays counted = days.get(range, this::countDays);
+            if (counted.generation() == generation) {
+                return counted.days();
+            }
+            // подсчет начался до пересчета снимка и сохранился уже после его invalidateAll
+            days.asMap().remove(range, counted);
+        }
+    }
+
+    private CountedDays countDays(Range range) {
+        long countedGeneration = generation;
+        List<DayCount> counts = transactionTemplate.execute(status -> taskRepository.countByDay(
+                Date.from(range.from().atStartOfDay(zone).toInstant()),
+                Date.from(range.to().atStartOfDay(zone).toInstant())));
+        return new CountedDays(new Days(List.copyOf(counts), new Date()), countedGeneration);
+    }
+
+    /**
+     * пересчитывает снимок, если его уже читали; до первого чтения база не нагружается
+     */
+    @Scheduled(fixedDelayString = "${taskapi.stats.refresh-interval-ms:60000}")
+    public void scheduledRefresh() {
+        if (snapshot != null) {
+            synchronized (this) {
+                refresh();
+            }
+        }
+    }
+
+    private Snapshot refresh() {
+        long changedRows = changeEventPublisher.getChangedRows();
+        Snapshot refreshed = transactionTemplate.execute(status -> new Snapshot(taskRepository.countTotals(),
+                List.copyOf(taskRepository.countByType()), List.copyOf(tagRepository.countTasksByTag()),
+                changedRows, new Date()));
+        generation++;
+        days.invalidateAll();
+        snapshot = refreshed;
+        return refreshed;
+    }
+
+    private boolean stale(Snapshot current) {
+        return changeEventPublisher.getChangedRows() - current.changedRows() >= refreshAfterMutations;
+    }
+}
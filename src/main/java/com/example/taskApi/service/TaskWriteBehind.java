@@ -0,0 +1,387 @@
+package com.example.taskApi.service;
+
+import com.example.taskApi.models.Task;
+import com.example.taskApi.models.TaskType;
+import com.example.taskApi.repository.TaskRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.dao.RecoverableDataAccessException;
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.CannotCreateTransactionException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+
+/**
+ * отложенная запись изменений задач (taskapi.write-behind.enabled): PUT /tasks/{id} и смена типа
+ * применяются к копии задачи в памяти и сливаются по id задачи, а в базу уходят раз в flush-interval-ms
+ * или при max-pending задачах одной транзакцией, только измененные столбцы (@DynamicUpdate).
+ * Если пачка не записалась, задачи записываются по одной, чтобы одна плохая строка не держала остальные.
+ * Временные ошибки (соединение, таймауты, блокировки) повторяются с экспоненциальной задержкой от retry-backoff
+ * до retry-max-backoff, и изменение не теряется; изменение с постоянной ошибкой (нарушение ограничений)
+ * отбрасывается с ошибкой в логе и счетчиком taskapi.write-behind.dropped. Изменение пишется только поверх
+ * версии задачи, от которой оно сделано: если задачу с тех пор изменил другой писатель, изменение отбрасывается
+ * со счетчиком taskapi.write-behind.conflicts, а чужое изменение остается.
+ * При durability=interval сбой процесса теряет изменения не больше чем за flush-interval-ms,
+ * при durability=sync запрос ждет записи своего изменения не дольше sync-timeout, а одновременные изменения
+ * пишутся вместе
+ */
+@Service
+public class TaskWriteBehind {
+    private static final Logger log = LoggerFactory.getLogger(TaskWriteBehind.class);
+
+    /**
+     * когда изменение считается выполненным: sync - после записи в базу, interval - сразу, запись позже
+     */
+    public enum Durability {
+        SYNC, INTERVAL
+    }
+
+    private enum Field {
+        NAME, DESCRIPTION, DATE, TYPE
+    }
+
+    /**
+     * копия задачи со всеми изменениями, список измененных полей, которые еще не записаны, версия задачи в базе,
+     * от которой сделаны изменения, число неудачных попыток записи, время следующей попытки по System.nanoTime
+     * и ожидание записи
+     */
+    private record Pending(Task task, EnumSet<Field> dirty, long baseVersion, int attempts, long retryAt,
+                           CompletableFuture<Void> written) {
+        Pending(Task task, EnumSet<Field> dirty, long baseVersion) {
+            this(task, dirty, baseVersion, 0, System.nanoTime(), new CompletableFuture<>());
+        }
+
+        Pending merge(Pending older) {
+            EnumSet<Field> fields = EnumSet.copyOf(older.dirty);
+            fields.addAll(dirty);
+            older.written.whenComplete((result, e) -> {
+                if (e == null) {
+                    written.complete(null);
+                } else {
+                    written.completeExceptionally(e);
+                }
+            });
+            return new Pending(task, fields, older.baseVersion, older.attempts, older.retryAt, older.written);
+        }
+
+        Pending retry(long delayNanos) {
+            return new Pending(task, dirty, baseVersion, attempts + 1, System.nanoTime() + delayNanos, written);
+        }
+
+        Pending rebase(long version) {
+            return new Pending(task, dirty, version, attempts, retryAt, written);
+        }
+    }
+
+    private final TaskRepository taskRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final Counter dropped;
+    private final Counter conflicts;
+    private final boolean enabled;
+    private final int maxPending;
+    private final long retryBackoffNanos;
+    private final long maxRetryBackoffNanos;
+    private final Duration syncTimeout;
+    private final Durability durability;
+    private final Object flushLock = new Object();
+    private Map<Integer, Pending> pending = new HashMap<>();
+    private Map<Integer, Pending> flushing = Map.of();
+
+    public TaskWriteBehind(TaskRepository taskRepository, PlatformTransactionManager transactionManager,
+                           MeterRegistry meterRegistry,
+                           @Value("${taskapi.write-behind.enabled:false}") boolean enabled,
+                           @Value("${taskapi.write-behind.max-pending:1000}") int maxPending,
+                           @Value("${taskapi.write-behind.retry-backoff:200ms}") Duration retryBackoff,
+                           @Value("${taskapi.write-behind.retry-max-backoff:30s}") Duration maxRetryBackoff,
+                           @Value("${taskapi.write-behind.sync-timeout:5s}") Duration syncTimeout,
+                           @Value("${taskapi.write-behind.durability:interval}") Durability durability) {
+        this.taskRepository = taskRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.dropped = Counter.builder("taskapi.write-behind.dropped")
+                .description("Task updates dropped after a non-retryable write error")
+                .register(meterRegistry);
+        this.conflicts = Counter.builder("taskapi.write-behind.conflicts")
+                .description("Task updates dropped because another writer changed the task first")
+                .register(meterRegistry);
+        this.enabled = enabled;
+        this.maxPending = maxPending;
+        this.retryBackoffNanos = retryBackoff.toNanos();
+        this.maxRetryBackoffNanos = maxRetryBackoff.toNanos();
+        this.syncTimeout = syncTimeout;
+        this.durability = durability;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * задача с учетом еще не записанных изменений
+     *
+     * @param id id задачи
+     * @return копия задачи или пусто, если незаписанных изменений нет
+     */
+    public synchronized Optional<Task> find(int id) {
+        Pending found = pending.getOrDefault(id, flushing.get(id));
+        return found == null ? Optional.empty() : Optional.of(copy(found.task()));
+    }
+
+    /**
+     * откладывает изменение имени, описания и даты задачи
+     *
+     * @param id id задачи
+     * @param name имя
+     * @param description описание
+     * @param date дата
+     * @return задача с изменениями или пусто, если задачи нет
+     * @throws RuntimeException ошибка записи при durability=sync, OptimisticLockingFailureException,
+     * если задачу изменил другой писатель, QueryTimeoutException, если изменение не записано за sync-timeout
+     */
+    public Optional<Task> update(int id, String name, String description, Date date) {
+        return apply(id, EnumSet.of(Field.NAME, Field.DESCRIPTION, Field.DATE), task -> {
+            task.setName(name);
+            task.setDescription(description);
+            task.setDate(date);
+        });
+    }
+
+    /**
+     * откладывает смену типа задачи
+     *
+     * @param id id задачи
+     * @param type новый тип
+     * @return задача с изменениями или пусто, если задачи нет
+     * @throws RuntimeException ошибка записи при durability=sync, OptimisticLockingFailureException,
+     * если задачу изменил другой писатель, QueryTimeoutException, если изменение не записано за sync-timeout
+     */
+    public Optional<Task> updateType(int id, TaskType type) {
+        return apply(id, EnumSet.of(Field.TYPE), task -> task.setType(type));
+    }
+
+    /**
+     * забывает незаписанные изменения удаленной задачи
+     *
+     * @param id id задачи
+     */
+    public synchronized void discard(int id) {
+        Pending removed = pending.remove(id);
+        if (removed != null) {
+            removed.written().complete(null);
+        }
+    }
+
+    private Optional<Task> apply(int id, EnumSet<Field> fields, Consumer<Task> change) {
+        Task loaded = null;
+        while (true) {
+            Task task = null;
+            Pending changes = null;
+            int size = 0;
+            synchronized (this) {
+                Pending found = pending.getOrDefault(id, flushing.get(id));
+                if (found != null || loaded != null) {
+                    task = copy(found != null ? found.task() : loaded);
+                    change.accept(task);
+                    changes = new Pending(task, fields, found != null ? found.baseVersion() : loaded.getVersion());
+                    pending.merge(id, changes, (older, newer) -> newer.merge(older));
+                    size = pending.size();
+                }
+            }
+            if (task != null) {
+                if (durability == Durability.SYNC) {
+                    awaitWritten(id, changes.written());
+                } else if (size >= maxPending) {
+                    flush();
+                }
+                return Optional.of(copy(task));
+            }
+            Optional<Task> found = taskRepository.findById(id);
+            if (found.isEmpty()) {
+                return Optional.empty();
+            }
+            loaded = found.get();
+        }
+    }
+
+    /**
+     * пишет очередь, пока изменение не записано или не отброшено, а между повторами ждет их задержку;
+     * изменения других запросов, накопленные к этому моменту, уходят той же транзакцией.
+     * Изменение, не записанное за sync-timeout, остается в очереди, а запрос получает ошибку
+     */
+    private void awaitWritten(int id, CompletableFuture<Void> written) {
+        long deadline = System.nanoTime() + syncTimeout.toNanos();
+        flush();
+        while (!written.isDone()) {
+            long left = deadline - System.nanoTime();
+            if (left <= 0) {
+                throw new QueryTimeoutException("Task " + id + " update was not written within " + syncTimeout
+                        + ", it stays queued");
+            }
+            try {
+                written.get(Math.min(retryDelay(id), left), TimeUnit.NANOSECONDS);
+            } catch (TimeoutException | ExecutionException e) {
+                // пора повторять или изменение уже отброшено
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new QueryTimeoutException("Interrupted waiting for task " + id + " update, it stays queued");
+            }
+            if (!written.isDone()) {
+                flush();
+            }
+        }
+        try {
+            written.join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException cause ? cause : e;
+        }
+    }
+
+    private synchronized long retryDelay(int id) {
+        Pending found = pending.get(id);
+        return found == null ? 0 : Math.max(0, found.retryAt() - System.nanoTime());
+    }
+
+    /**
+     * записывает накопленные изменения, время повтора которых наступило: одна выборка задач по id
+     * и UPDATE только измененных столбцов каждой задачи одной транзакцией; если транзакция не прошла,
+     * задачи записываются по одной, а задачи с временной ошибкой возвращаются в очередь с задержкой
+     */
+    @Scheduled(fixedDelayString = "${taskapi.write-behind.flush-interval-ms:200}")
+    public void flush() {
+        synchronized (flushLock) {
+            Map<Integer, Pending> batch = new HashMap<>();
+            synchronized (this) {
+                long now = System.nanoTime();
+                for (Iterator<Map.Entry<Integer, Pending>> it = pending.entrySet().iterator(); it.hasNext(); ) {
+                    Map.Entry<Integer, Pending> entry = it.next();
+                    if (entry.getValue().retryAt() - now <= 0) {
+                        batch.put(entry.getKey(), entry.getValue());
+                        it.remove();
+                    }
+                }
+                if (batch.isEmpty()) {
+                    return;
+                }
+                flushing = batch;
+            }
+            try {
+                List<Task> tasks = transactionTemplate.execute(status -> write(batch));
+                written(batch, tasks);
+            } catch (RuntimeException e) {
+                log.warn("Write-behind flush of {} tasks failed, writing them one by one", batch.size(), e);
+                batch.forEach(this::writeOne);
+            } finally {
+                synchronized (this) {
+                    flushing = Map.of();
+                }
+            }
+        }
+    }
+
+    private void writeOne(int id, Pending changes) {
+        Map<Integer, Pending> single = Map.of(id, changes);
+        try {
+            written(single, transactionTemplate.execute(status -> write(single)));
+        } catch (OptimisticLockingFailureException e) {
+            log.warn("Dropping write-behind changes {} of task {}: the task was changed by another writer"
+                    + " after version {}", changes.dirty(), id, changes.baseVersion());
+            conflicts.increment();
+            changes.written().completeExceptionally(e);
+        } catch (RuntimeException e) {
+            if (!retryable(e)) {
+                log.error("Dropping write-behind changes {} of task {}", changes.dirty(), id, e);
+                dropped.increment();
+                changes.written().completeExceptionally(e);
+                return;
+            }
+            long delay = Math.min(retryBackoffNanos << Math.min(changes.attempts(), 30), maxRetryBackoffNanos);
+            Pending failed = changes.retry(delay);
+            log.warn("Write-behind update of task {} failed, attempt {}, retrying in {} ms",
+                    id, failed.attempts(), TimeUnit.NANOSECONDS.toMillis(delay), e);
+            synchronized (this) {
+                pending.merge(id, failed, (newer, older) -> newer.merge(older));
+            }
+        }
+    }
+
+    /**
+     * повторяются ошибки соединения, таймауты и блокировки; нарушение ограничений или неверные данные
+     * при повторе не исчезнут
+     */
+    private static boolean retryable(RuntimeException e) {
+        return e instanceof TransientDataAccessException || e instanceof RecoverableDataAccessException
+                || e instanceof DataAccessResourceFailureException || e instanceof CannotCreateTransactionException;
+    }
+
+    /**
+     * отмечает изменения записанными, а изменения тех же задач, сделанные во время записи поверх записанной
+     * версии, переносит на новую версию задачи
+     */
+    private void written(Map<Integer, Pending> batch, List<Task> tasks) {
+        synchronized (this) {
+            for (Task task : tasks) {
+                Pending next = pending.get(task.getId());
+                if (next != null && next.baseVersion() == batch.get(task.getId()).baseVersion()) {
+                    pending.put(task.getId(), next.rebase(task.getVersion()));
+                }
+            }
+        }
+        batch.values().forEach(changes -> changes.written().complete(null));
+    }
+
+    /**
+     * переносит изменения на задачи из базы; UPDATE проверяет версию (@Version), поэтому задача,
+     * измененная другим писателем до выборки или после нее, не перезаписывается
+     *
+     * @return задачи из базы, после фиксации - с новыми версиями
+     */
+    private List<Task> write(Map<Integer, Pending> batch) {
+        List<Task> tasks = taskRepository.findAllById(batch.keySet());
+        for (Task task : tasks) {
+            Pending changes = batch.get(task.getId());
+            if (task.getVersion() != changes.baseVersion()) {
+                throw new ObjectOptimisticLockingFailureException(Task.class, task.getId());
+            }
+            for (Field field : changes.dirty()) {
+                switch (field) {
+                    case NAME -> task.setName(changes.task().getName());
+                    case DESCRIPTION -> task.setDescription(changes.task().getDescription());
+                    case DATE -> task.setDate(changes.task().getDate());
+                    case TYPE -> task.setType(changes.task().getType());
+                }
+            }
+        }
+        return tasks;
+    }
+
+    @PreDestroy
+    void flushOnShutdown() {
+        flush();
+    }
+
+    private static Task copy(Task task) {
+        Task copy = new Task(task.getName(), task.getDescription(), task.getDate());
+        copy.setId(task.getId());
+        copy.setType(task.getType());
+        copy.setTag(task.getTag());
+        return copy;
+    }
+}
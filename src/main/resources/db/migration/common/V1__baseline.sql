@@ -0,0 +1,29 @@
+-- Schema previously created by hibernate.ddl-auto=update.
+-- Existing databases are baselined at this version and skip it.
+CREATE SEQUENCE IF NOT EXISTS task_type_seq START WITH 1 INCREMENT BY 50;
+CREATE SEQUENCE IF NOT EXISTS tag_seq START WITH 1 INCREMENT BY 50;
+CREATE SEQUENCE IF NOT EXISTS task_seq START WITH 1 INCREMENT BY 50;
+
+CREATE TABLE IF NOT EXISTS task_type (
+    id   INTEGER NOT NULL,
+    name VARCHAR(255),
+    PRIMARY KEY (id)
+);
+
+CREATE TABLE IF NOT EXISTS tag (
+    id   INTEGER NOT NULL,
+    name VARCHAR(255),
+    PRIMARY KEY (id)
+);
+
+CREATE TABLE IF NOT EXISTS task (
+    id           INTEGER NOT NULL,
+    name         VARCHAR(255),
+    description  VARCHAR(255),
+    date         TIMESTAMP(6),
+    id_task_type INTEGER,
+    id_tag       INTEGER,
+    PRIMARY KEY (id),
+    CONSTRAINT fk_task_task_type FOREIGN KEY (id_task_type) REFERENCES task_type (id),
+    CONSTRAINT fk_task_tag FOREIGN KEY (id_tag) REFERENCES tag (id)
+);
@@ -0,0 +1,4 @@
+-- /api/tasks/date: range scan on the day, type id available in the index for the join and ordering
+CREATE INDEX IF NOT EXISTS idx_task_date_type ON task (date, id_task_type);
+-- tag lookups and the EXISTS semi-join in /api/tags/tasks
+CREATE INDEX IF NOT EXISTS idx_task_tag ON task (id_tag);
@@ -0,0 +1,7 @@
+-- last modification time; MAX(updated_at) with COUNT(*) gives list endpoints a cheap ETag
+ALTER TABLE task ADD COLUMN IF NOT EXISTS updated_at TIMESTAMP(6);
+ALTER TABLE tag ADD COLUMN IF NOT EXISTS updated_at TIMESTAMP(6);
+UPDATE task SET updated_at = CURRENT_TIMESTAMP WHERE updated_at IS NULL;
+UPDATE tag SET updated_at = CURRENT_TIMESTAMP WHERE updated_at IS NULL;
+CREATE INDEX IF NOT EXISTS idx_task_updated_at ON task (updated_at);
+CREATE INDEX IF NOT EXISTS idx_tag_updated_at ON tag (updated_at);
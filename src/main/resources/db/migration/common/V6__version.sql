@@ -0,0 +1,3 @@
+-- optimistic locking: every UPDATE checks and increments version instead of silently overwriting
+ALTER TABLE task ADD COLUMN IF NOT EXISTS version BIGINT DEFAULT 0 NOT NULL;
+ALTER TABLE tag ADD COLUMN IF NOT EXISTS version BIGINT DEFAULT 0 NOT NULL;
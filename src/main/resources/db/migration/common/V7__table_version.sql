@@ -0,0 +1,9 @@
+-- change counter per table for list ETags: one row per table, bumped once per modifying statement
+-- inside the modifying transaction with the database clock (triggers in the vendor migrations)
+CREATE TABLE IF NOT EXISTS table_version (
+    name        VARCHAR(64) NOT NULL,
+    version     BIGINT DEFAULT 0 NOT NULL,
+    modified_at TIMESTAMP(6) DEFAULT CURRENT_TIMESTAMP NOT NULL,
+    PRIMARY KEY (name)
+);
+INSERT INTO table_version (name) VALUES ('task'), ('tag'), ('task_type');
@@ -0,0 +1,10 @@
+-- change log for list ETags: every modifying statement appends a row here instead of updating the shared
+-- table_version row, so concurrent writers never wait on one counter row. The version of a table is
+-- table_version.version plus its rows here; TableVersionCompactor periodically folds the rows into table_version
+CREATE TABLE IF NOT EXISTS table_change (
+    id         BIGINT GENERATED BY DEFAULT AS IDENTITY,
+    name       VARCHAR(64) NOT NULL,
+    changed_at TIMESTAMP(6) DEFAULT CURRENT_TIMESTAMP NOT NULL,
+    PRIMARY KEY (id)
+);
+CREATE INDEX IF NOT EXISTS idx_table_change_name ON table_change (name, id);
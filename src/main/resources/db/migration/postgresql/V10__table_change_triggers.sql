@@ -0,0 +1,9 @@
+-- the V8 statement triggers now append to table_change (an insert takes no shared row lock)
+-- instead of updating the per-table counter row, which serialized all writers to a table until commit;
+-- a rolled back write leaves no row, so the version is unchanged
+CREATE OR REPLACE FUNCTION bump_table_version() RETURNS trigger AS $$
+BEGIN
+    INSERT INTO table_change (name) VALUES (TG_TABLE_NAME);
+    RETURN NULL;
+END
+$$ LANGUAGE plpgsql;
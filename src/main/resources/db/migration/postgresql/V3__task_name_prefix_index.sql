@@ -0,0 +1,2 @@
+-- name prefix search in /api/tasks/search (LIKE 'prefix%') regardless of the database collation
+CREATE INDEX IF NOT EXISTS idx_task_name_prefix ON task (name varchar_pattern_ops);
@@ -0,0 +1,4 @@
+-- full-text search in /api/tasks/search?q=; the column is maintained by PostgreSQL on every write
+ALTER TABLE task ADD COLUMN IF NOT EXISTS search_vector tsvector
+    GENERATED ALWAYS AS (to_tsvector('russian'::regconfig, coalesce(name, '') || ' ' || coalesce(description, ''))) STORED;
+CREATE INDEX IF NOT EXISTS idx_task_search_vector ON task USING GIN (search_vector);
@@ -0,0 +1,15 @@
+-- bumps table_version for every INSERT/UPDATE/DELETE/TRUNCATE statement on the listed tables;
+-- the row lock is held until commit, so a rolled back write leaves the version unchanged
+CREATE OR REPLACE FUNCTION bump_table_version() RETURNS trigger AS $$
+BEGIN
+    UPDATE table_version SET version = version + 1, modified_at = CURRENT_TIMESTAMP WHERE name = TG_TABLE_NAME;
+    RETURN NULL;
+END
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER task_table_version AFTER INSERT OR UPDATE OR DELETE OR TRUNCATE ON task
+    FOR EACH STATEMENT EXECUTE FUNCTION bump_table_version();
+CREATE TRIGGER tag_table_version AFTER INSERT OR UPDATE OR DELETE OR TRUNCATE ON tag
+    FOR EACH STATEMENT EXECUTE FUNCTION bump_table_version();
+CREATE TRIGGER task_type_table_version AFTER INSERT OR UPDATE OR DELETE OR TRUNCATE ON task_type
+    FOR EACH STATEMENT EXECUTE FUNCTION bump_table_version();
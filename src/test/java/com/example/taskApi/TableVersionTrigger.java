@@ -0,0 +1,30 @@
+package com.example.taskApi;
+
+import org.h2.api.Trigger;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+/**
+ * триггер H2 для тестов: как bump_table_version в PostgreSQL, добавляет строку в table_change
+ * на каждый изменяющий запрос
+ */
+public class TableVersionTrigger implements Trigger {
+    private String table;
+
+    @Override
+    public void init(Connection conn, String schemaName, String triggerName, String tableName, boolean before,
+                     int type) {
+        this.table = tableName.toLowerCase();
+    }
+
+    @Override
+    public void fire(Connection conn, Object[] oldRow, Object[] newRow) throws SQLException {
+        try (PreparedStatement statement = conn.prepareStatement(
+                "INSERT INTO table_change (name) VALUES (?)")) {
+            statement.setString(1, table);
+            statement.executeUpdate();
+        }
+    }
+}
@@ -1,59 +1,140 @@
 package com.example.taskApi;
 
+import com.example.taskApi.config.ConcurrencyLimitInterceptor;
+import com.example.taskApi.dto.DayCount;
+import com.example.taskApi.dto.TableVersion;
+import com.example.taskApi.dto.TagSummary;
+import com.example.taskApi.dto.TaskPatch;
+import com.example.taskApi.dto.TaskSearch;
+import com.example.taskApi.dto.TaskSearchHit;
+import com.example.taskApi.dto.TaskTotals;
+import com.example.taskApi.dto.TypeCount;
 import com.example.taskApi.models.Tag;
 import com.example.taskApi.models.Task;
 import com.example.taskApi.models.TaskType;
 import com.example.taskApi.repository.TagRepository;
+import com.example.taskApi.repository.TaskExportRepository;
 import com.example.taskApi.repository.TaskRepository;
 import com.example.taskApi.repository.TaskTypeRepository;
+import com.example.taskApi.service.ChangeEventPublisher;
+import com.example.taskApi.service.TagService;
+import com.example.taskApi.service.TaskAgenda;
+import com.example.taskApi.service.TaskBatchWriter;
+import com.example.taskApi.service.TaskService;
+import com.example.taskApi.service.TaskStats;
+import com.example.taskApi.service.TaskWriteBehind;
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import com.fasterxml.jackson.dataformat.smile.databind.SmileMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.util.LinkedMultiValueMap;
 import org.springframework.util.MultiValueMap;
 
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.ZoneId;
 import java.util.*;
-import java.util.stream.Collectors;
 
+import static org.hamcrest.Matchers.hasItem;
+import static org.hamcrest.Matchers.not;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
 import static org.mockito.Mockito.*;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultHandlers.print;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 //@SpringBootTest
 @WebMvcTest(Controller.class)
 @ContextConfiguration(classes=TaskApiApplication.class)
+@Import({TaskApiApplicationTests.MetricsConfiguration.class, TaskService.class, TagService.class, TaskAgenda.class})
 class TaskApiApplicationTests {
 
+    @TestConfiguration
+    static class MetricsConfiguration {
+        @Bean
+        MeterRegistry meterRegistry() {
+            return new SimpleMeterRegistry();
+        }
+    }
+
     @MockBean
     private TaskRepository taskRepository;
 
+    @MockBean
+    private TaskExportRepository taskExportRepository;
+
     @MockBean
     private TaskTypeRepository taskTypeRepository;
 
     @MockBean
     private TagRepository tagRepository;
 
+    @MockBean
+    private TaskBatchWriter taskBatchWriter;
+
+    @MockBean
+    private ChangeEventPublisher changeEventPublisher;
+
+    @MockBean
+    private TaskWriteBehind taskWriteBehind;
+
+    @MockBean
+    private TaskStats taskStats;
+
+    @Autowired
+    private Controller controller;
+
     @Autowired
     private MockMvc mockMvc;
 
     @Autowired
     private ObjectMapper objectMapper;
 
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private TaskAgenda taskAgenda;
+
+    @BeforeEach
+    void stubTableVersions() {
+        taskAgenda.clear();
+        when(taskRepository.findTableVersion()).thenReturn(new TableVersion(3, new Date(1_000_000L)));
+        when(tagRepository.findTableVersion()).thenReturn(new TableVersion(2, new Date(2_000_000L)));
+    }
+
     @Test
     void contextLoads() {
     }
@@ -73,6 +154,27 @@ class TaskApiApplicationTests {
                 .andDo(print());
     }
 
+    /**
+     * тестирует, что созданная задача публикуется в поток событий, а отклоненная нет
+     *
+     * @throws Exception
+     */
+    @Test
+    void testCreateTaskPublishesEvent() throws Exception {
+        Task saved = new Task("имя", "описание", new Date());
+        when(taskRepository.save(any(Task.class))).thenReturn(saved);
+        mockMvc.perform(post("/api/tasks").contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(saved)))
+                .andExpect(status().isCreated());
+        verify(changeEventPublisher).publish("task.created", saved);
+
+        clearInvocations(changeEventPublisher);
+        mockMvc.perform(post("/api/tasks").contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"name\":\"имя\"}"))
+                .andExpect(status().isBadRequest());
+        verifyNoInteractions(changeEventPublisher);
+    }
+
     /**
      * тестирует создание новой задачи с некорректной датой (больше текущей)
      *
@@ -91,6 +193,105 @@ class TaskApiApplicationTests {
                 .andDo(print());
     }
 
+    /**
+     * тестирует пакетное создание задач из json-массива с одной некорректной датой
+     *
+     * @throws Exception
+     */
+    @Test
+    void testCreateTasksBatchReportsWrongDates() throws Exception {
+        Date future = new SimpleDateFormat("yyyy-MM-dd").parse("2222-12-12");
+        List<Task> tasks = new ArrayList<>();
+        fillTasks(tasks);
+        tasks.get(1).setDate(future);
+        mockMvc.perform(post("/api/tasks/batch").contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(tasks)))
+                .andExpect(status().isCreated())
+                .andExpect(jsonPath("$.accepted").value(2))
+                .andExpect(jsonPath("$.errors.size()").value(1))
+                .andExpect(jsonPath("$.errors[0].index").value(1))
+                .andDo(print());
+        verify(taskBatchWriter).insertAll(argThat(chunk -> chunk.size() == 2));
+    }
+
+    /**
+     * тестирует, что пустой элемент массива становится ошибкой элемента, а не ответом 500
+     *
+     * @throws Exception
+     */
+    @Test
+    void testCreateTasksBatchReportsNullItems() throws Exception {
+        List<Task> tasks = new ArrayList<>();
+        fillTasks(tasks);
+        String body = "[" + objectMapper.writeValueAsString(tasks.get(0)) + ",null,"
+                + objectMapper.writeValueAsString(tasks.get(2)) + "]";
+        mockMvc.perform(post("/api/tasks/batch").contentType(MediaType.APPLICATION_JSON).content(body))
+                .andExpect(status().isCreated())
+                .andExpect(jsonPath("$.accepted").value(2))
+                .andExpect(jsonPath("$.errors[0].index").value(1))
+                .andDo(print());
+        verify(changeEventPublisher).publish("tasks.created", Map.of("count", 2), 2L);
+    }
+
+    /**
+     * тестирует, что при сбое записи пачки уже сохраненные пачки попадают в ответ и в событие tasks.created
+     *
+     * @throws Exception
+     */
+    @Test
+    void testFailCreateTasksBatchPublishesSavedChunks() throws Exception {
+        List<Task> tasks = new ArrayList<>();
+        fillTasks(tasks);
+        doNothing().doThrow(new IllegalStateException("база недоступна")).when(taskBatchWriter).insertAll(any());
+        int chunkSize = controller.batchChunkSize;
+        controller.batchChunkSize = 2;
+        try {
+            mockMvc.perform(post("/api/tasks/batch").contentType(MediaType.APPLICATION_JSON)
+                            .content(objectMapper.writeValueAsString(tasks)))
+                    .andExpect(status().isInternalServerError())
+                    .andExpect(jsonPath("$.accepted").value(2))
+                    .andDo(print());
+        } finally {
+            controller.batchChunkSize = chunkSize;
+        }
+        verify(changeEventPublisher).publish("tasks.created", Map.of("count", 2), 2L);
+    }
+
+    /**
+     * тестирует пакетное создание задач из ndjson
+     *
+     * @throws Exception
+     */
+    @Test
+    void testCreateTasksBatchFromNdjson() throws Exception {
+        StringBuilder body = new StringBuilder();
+        List<Task> tasks = new ArrayList<>();
+        fillTasks(tasks);
+        for (Task task : tasks) {
+            body.append(objectMapper.writeValueAsString(task)).append('\n');
+        }
+        mockMvc.perform(post("/api/tasks/batch").contentType(MediaType.APPLICATION_NDJSON)
+                        .content(body.toString()))
+                .andExpect(status().isCreated())
+                .andExpect(jsonPath("$.accepted").value(3))
+                .andExpect(jsonPath("$.errors.size()").value(0))
+                .andDo(print());
+    }
+
+    /**
+     * тестирует пакетное создание задач из некорректного json
+     *
+     * @throws Exception
+     */
+    @Test
+    void testFailCreateTasksBatchWithBrokenJson() throws Exception {
+        mockMvc.perform(post("/api/tasks/batch").contentType(MediaType.APPLICATION_JSON)
+                        .content("[{\"name\": "))
+                .andExpect(status().isBadRequest())
+                .andDo(print());
+        verify(taskBatchWriter, never()).insertAll(any());
+    }
+
     /**
      * тестирует успешный поиск задачи по ее id
      *
@@ -104,6 +305,8 @@ class TaskApiApplicationTests {
         when(taskRepository.findById(id)).thenReturn(Optional.of(task));
         //mockMvc.perform((get("/api/tasks/{id}", id)));
         mockMvc.perform(get("/api/tasks/{id}", id)).andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"0\""))
+                .andExpect(header().stringValues(HttpHeaders.VARY, hasItem(HttpHeaders.ACCEPT)))
                 .andExpect(jsonPath("$.id").value(id))
                 .andExpect(jsonPath("$.name").value(task.getName()))
                 .andExpect(jsonPath("$.description").value(task.getDescription()))
@@ -141,6 +344,162 @@ class TaskApiApplicationTests {
                 .andDo(print());
     }
 
+    /**
+     * тестирует, что список задач отдается в Smile и CBOR по заголовку Accept, а без него - в json,
+     * и что задачу можно создать из тела в Smile
+     *
+     * @throws Exception
+     */
+    @Test
+    void testSuccessGetAllTasksInBinaryFormats() throws Exception {
+        List<Task> tasks = new ArrayList<>();
+        fillTasks(tasks);
+        when(taskRepository.findAll()).thenReturn(tasks);
+        ObjectMapper smileMapper = new SmileMapper();
+        ObjectMapper cborMapper = new CBORMapper();
+
+        byte[] smile = mockMvc.perform(get("/api/tasks").accept("application/x-jackson-smile"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType("application/x-jackson-smile"))
+                .andReturn().getResponse().getContentAsByteArray();
+        JsonNode smileTasks = smileMapper.readTree(smile);
+        Assertions.assertEquals(tasks.size(), smileTasks.size());
+        Assertions.assertEquals("имя1", smileTasks.get(1).get("name").asText());
+
+        byte[] cbor = mockMvc.perform(get("/api/tasks").accept("application/cbor"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType("application/cbor"))
+                .andReturn().getResponse().getContentAsByteArray();
+        Assertions.assertEquals("имя2", cborMapper.readTree(cbor).get(2).get("name").asText());
+
+        mockMvc.perform(get("/api/tasks"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_JSON));
+
+        mockMvc.perform(post("/api/tasks").contentType("application/x-jackson-smile")
+                        .content(smileMapper.writeValueAsBytes(new Task("имя", "описание", new Date()))))
+                .andExpect(status().isCreated());
+        verify(taskRepository).save(argThat(task -> "имя".equals(task.getName())));
+    }
+
+    /**
+     * тестирует, что ошибка, превращенная в 500, учитывается счетчиком по типу исключения и адресу
+     *
+     * @throws Exception
+     */
+    @Test
+    void testFailGetAllTasksIsCounted() throws Exception {
+        when(taskRepository.findAll()).thenThrow(new IllegalStateException("connection lost"));
+        double before = meterRegistry.counter(Controller.ERROR_COUNTER,
+                "exception", "IllegalStateException", "uri", "/api/tasks").count();
+        mockMvc.perform(get("/api/tasks"))
+                .andExpect(status().isInternalServerError())
+                .andDo(print());
+        Assertions.assertEquals(before + 1, meterRegistry.counter(Controller.ERROR_COUNTER,
+                "exception", "IllegalStateException", "uri", "/api/tasks").count());
+    }
+
+    /**
+     * тестирует, что список задач отдается с ETag, а повторный запрос с ним получает 304 без выборки задач;
+     * оба ответа зависят от Accept
+     *
+     * @throws Exception
+     */
+    @Test
+    void testGetAllTasksNotModified() throws Exception {
+        String etag = mockMvc.perform(get("/api/tasks"))
+                .andExpect(header().exists(HttpHeaders.ETAG))
+                .andExpect(header().exists(HttpHeaders.LAST_MODIFIED))
+                .andExpect(header().stringValues(HttpHeaders.VARY, hasItem(HttpHeaders.ACCEPT)))
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        clearInvocations(taskRepository);
+        mockMvc.perform(get("/api/tasks").header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isNotModified())
+                .andExpect(header().stringValues(HttpHeaders.VARY, hasItem(HttpHeaders.ACCEPT)))
+                .andExpect(content().string(""))
+                .andDo(print());
+        verify(taskRepository, never()).findAll();
+    }
+
+    /**
+     * тестирует, что ETag списка тегов меняется вместе с общей версией таблиц тегов, задач и типов
+     *
+     * @throws Exception
+     */
+    @Test
+    void testGetTagsWithTasksEtagDependsOnTasks() throws Exception {
+        when(tagRepository.findAllWithTasks()).thenReturn(List.of(new TagSummary(1, "имя1")));
+        String etag = mockMvc.perform(get("/api/tags/tasks"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        when(tagRepository.findTableVersion()).thenReturn(new TableVersion(4, new Date(2_000_000L)));
+        mockMvc.perform(get("/api/tags/tasks").header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, not(etag)))
+                .andDo(print());
+    }
+
+    /**
+     * тестирует вывод страницы задач по курсору
+     *
+     * @throws Exception
+     */
+    @Test
+    void testSuccessGetTasksPage() throws Exception {
+        List<Task> tasks = new ArrayList<>();
+        fillTasks(tasks);
+        when(taskRepository.findByIdGreaterThanOrderByIdAsc(0, PageRequest.of(0, tasks.size()))).thenReturn(tasks);
+        mockMvc.perform(get("/api/tasks").param("after", "0").param("limit", String.valueOf(tasks.size())))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.size()").value(tasks.size()))
+                .andExpect(header().string("X-Next-Cursor", String.valueOf(tasks.get(tasks.size() - 1).getId())))
+                .andDo(print());
+    }
+
+    /**
+     * тестирует вывод последней страницы задач (без курсора следующей страницы)
+     *
+     * @throws Exception
+     */
+    @Test
+    void testSuccessGetLastTasksPage() throws Exception {
+        List<Task> tasks = new ArrayList<>();
+        fillTasks(tasks);
+        when(taskRepository.findByIdGreaterThanOrderByIdAsc(0, PageRequest.of(0, 10))).thenReturn(tasks);
+        mockMvc.perform(get("/api/tasks").param("limit", "10"))
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist("X-Next-Cursor"))
+                .andDo(print());
+    }
+
+    /**
+     * тестирует запрос страницы задач с некорректным размером
+     *
+     * @throws Exception
+     */
+    @Test
+    void testFailGetTasksPageWithWrongLimit() throws Exception {
+        mockMvc.perform(get("/api/tasks").param("limit", "0"))
+                .andExpect(status().isBadRequest())
+                .andDo(print());
+    }
+
+    /**
+     * тестирует потоковую выгрузку задач
+     *
+     * @throws Exception
+     */
+    @Test
+    void testSuccessExportTasks() throws Exception {
+        MvcResult result = mockMvc.perform(get("/api/tasks/export"))
+                .andReturn();
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().json("[]"))
+                .andDo(print());
+        verify(taskExportRepository).writeAll(any());
+    }
+
     /*@Test
     void testGetTasksByDate() throws Exception {
         List<Task> tasks = new ArrayList<>();
@@ -163,13 +522,103 @@ class TaskApiApplicationTests {
     void testFailGetTasksByDate() throws Exception {
         List<Task> tasks = new ArrayList<>();
         String date = new SimpleDateFormat("yyyy-MM-dd").format(new Date()).trim();
-        when(taskRepository.findByDateWithTypesSorted(date + " 00:00:00", date + " 23:59:59"))
+        when(taskRepository.findByDateWithTypesSorted(any(Date.class), any(Date.class)))
                 .thenReturn(tasks);
         mockMvc.perform(get("/api/tasks/date").content(objectMapper.writeValueAsString(date)))
                 .andExpect(status().isNoContent())
                 .andDo(print());
     }
 
+    /**
+     * тестирует поиск задач по дате, переданной параметром, в полуоткрытом интервале суток
+     *
+     * @throws Exception
+     */
+    @Test
+    void testSuccessGetTasksByDateParam() throws Exception {
+        List<Task> tasks = new ArrayList<>();
+        fillTasks(tasks);
+        LocalDate day = LocalDate.of(2023, 8, 1);
+        ZoneId zone = ZoneId.systemDefault();
+        when(taskRepository.findByDateWithTypesSorted(Date.from(day.atStartOfDay(zone).toInstant()),
+                Date.from(day.plusDays(1).atStartOfDay(zone).toInstant())))
+                .thenReturn(tasks);
+        mockMvc.perform(get("/api/tasks/date").param("date", day.toString()))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.size()").value(tasks.size()))
+                .andDo(print());
+    }
+
+    /**
+     * тестирует поиск задач по некорректной дате
+     *
+     * @throws Exception
+     */
+    @Test
+    void testFailGetTasksByWrongDate() throws Exception {
+        mockMvc.perform(get("/api/tasks/date").content("01.08.2023"))
+                .andExpect(status().isBadRequest())
+                .andDo(print());
+        mockMvc.perform(get("/api/tasks/date"))
+                .andExpect(status().isBadRequest());
+    }
+
+    /**
+     * тестирует передачу условий, полей и сортировки в поиск задач
+     *
+     * @throws Exception
+     */
+    @Test
+    void testSuccessSearchTasks() throws Exception {
+        when(taskRepository.search(any(TaskSearch.class))).thenReturn(List.of(Map.of("id", 1, "name", "имя1")));
+        mockMvc.perform(get("/api/tasks/search")
+                        .param("typeId", "2")
+                        .param("name", "им")
+                        .param("fields", "id,name")
+                        .param("sort", "date,desc")
+                        .param("sort", "name"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].name").value("имя1"))
+                .andDo(print());
+        verify(taskRepository).search(argThat(search -> search.typeId() == 2
+                && search.namePrefix().equals("им")
+                && search.fields().equals(List.of("id", "name"))
+                && search.sort().equals(Sort.by(Sort.Order.desc("date"), Sort.Order.asc("name")))));
+    }
+
+    /**
+     * тестирует полнотекстовый поиск задач
+     *
+     * @throws Exception
+     */
+    @Test
+    void testSuccessSearchTasksFullText() throws Exception {
+        TaskSearchHit hit = mock(TaskSearchHit.class);
+        when(hit.getId()).thenReturn(1);
+        when(hit.getName()).thenReturn("годовой отчет");
+        when(hit.getRank()).thenReturn(0.5f);
+        when(taskRepository.searchFullText("отчет", 50)).thenReturn(List.of(hit));
+        mockMvc.perform(get("/api/tasks/search").param("q", "отчет").param("limit", "50"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].id").value(1))
+                .andExpect(jsonPath("$[0].rank").value(0.5))
+                .andDo(print());
+        verify(taskRepository, never()).search(any());
+    }
+
+    /**
+     * тестирует поиск задач с неизвестным полем
+     *
+     * @throws Exception
+     */
+    @Test
+    void testFailSearchTasksWithUnknownField() throws Exception {
+        when(taskRepository.search(any(TaskSearch.class))).thenThrow(new IllegalArgumentException("unknown field: x"));
+        mockMvc.perform(get("/api/tasks/search").param("fields", "x"))
+                .andExpect(status().isBadRequest())
+                .andDo(print());
+    }
+
     /**
      * тестирует успешное обновление полей задачи (без типа) по ее id
      *
@@ -238,6 +687,92 @@ class TaskApiApplicationTests {
                 .andDo(print());
     }
 
+    /**
+     * тестирует, что обновление с устаревшим If-Match отклоняется без записи
+     *
+     * @throws Exception
+     */
+    @Test
+    void testFailUpdateTaskWithStaleIfMatch() throws Exception {
+        int id = 0;
+        Task task = new Task("имя", "описание", new Date());
+        when(taskRepository.findById(id)).thenReturn(Optional.of(task));
+        mockMvc.perform(put("/api/tasks/{id}", id).contentType(MediaType.APPLICATION_JSON)
+                        .header(HttpHeaders.IF_MATCH, "\"7\"")
+                        .content(objectMapper.writeValueAsString(new Task("имя1", "описание1", new Date()))))
+                .andExpect(status().isPreconditionFailed())
+                .andDo(print());
+        verify(taskRepository, never()).save(any(Task.class));
+    }
+
+    /**
+     * тестирует частичное обновление задачи одним UPDATE без чтения: 204 и ETag следующей версии
+     *
+     * @throws Exception
+     */
+    @Test
+    void testSuccessPatchTask() throws Exception {
+        int id = 3;
+        when(taskRepository.patch(eq(id), any(TaskPatch.class), eq(4L))).thenReturn(1);
+        mockMvc.perform(patch("/api/tasks/{id}", id).contentType(MediaType.APPLICATION_JSON)
+                        .header(HttpHeaders.IF_MATCH, "\"4\"")
+                        .content("{\"name\":\"имя1\"}"))
+                .andExpect(status().isNoContent())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"5\""))
+                .andDo(print());
+        verify(taskRepository).patch(id, new TaskPatch("имя1", null, null, null), 4L);
+        verify(taskRepository, never()).findById(anyInt());
+    }
+
+    /**
+     * тестирует, что несработавший PATCH различает устаревшую версию (412) и несуществующую задачу (404)
+     *
+     * @throws Exception
+     */
+    @Test
+    void testFailPatchTask() throws Exception {
+        when(taskRepository.patch(anyInt(), any(TaskPatch.class), eq(4L))).thenReturn(0);
+        when(taskRepository.existsById(1)).thenReturn(true);
+        when(taskRepository.existsById(2)).thenReturn(false);
+        mockMvc.perform(patch("/api/tasks/{id}", 1).contentType(MediaType.APPLICATION_JSON)
+                        .header(HttpHeaders.IF_MATCH, "\"4\"")
+                        .content("{\"description\":\"описание1\"}"))
+                .andExpect(status().isPreconditionFailed());
+        mockMvc.perform(patch("/api/tasks/{id}", 2).contentType(MediaType.APPLICATION_JSON)
+                        .header(HttpHeaders.IF_MATCH, "\"4\"")
+                        .content("{\"description\":\"описание1\"}"))
+                .andExpect(status().isNotFound());
+        mockMvc.perform(patch("/api/tasks/{id}", 1).contentType(MediaType.APPLICATION_JSON)
+                        .content("{}"))
+                .andExpect(status().isBadRequest())
+                .andDo(print());
+    }
+
+    /**
+     * тестирует, что при отложенной записи обновление задачи не читает и не сохраняет ее в базе
+     *
+     * @throws Exception
+     */
+    @Test
+    void testUpdateTaskWithWriteBehind() throws Exception {
+        int id = 1;
+        Task updated = new Task("имя1", "описание1", new Date());
+        updated.setId(id);
+        when(taskWriteBehind.isEnabled()).thenReturn(true);
+        when(taskWriteBehind.update(eq(id), eq("имя1"), eq("описание1"), any(Date.class))).thenReturn(Optional.of(updated));
+        mockMvc.perform(put("/api/tasks/{id}", id).contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(updated)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.name").value("имя1"))
+                .andDo(print());
+        verify(taskRepository, never()).findById(anyInt());
+        verify(taskRepository, never()).save(any(Task.class));
+
+        mockMvc.perform(put("/api/tasks/{id}", 2).contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(updated)))
+                .andExpect(status().isNotFound());
+    }
+
     /**
      * тестирует успешное удаление задачи по ее id
      *
@@ -260,12 +795,38 @@ class TaskApiApplicationTests {
      */
     @Test
     void testSuccessDeleteAllTasks() throws Exception {
-        List<Task> tasks = new ArrayList<>();
-        fillTasks(tasks);
-        doNothing().when(taskRepository).deleteAll();
+        when(taskRepository.deleteChunk(anyInt())).thenReturn(5000, 5000, 3);
         mockMvc.perform(delete("/api/tasks"))
                 .andExpect(status().isNoContent())
                 .andDo(print());
+        verify(taskRepository, times(3)).deleteChunk(anyInt());
+        verify(taskRepository, never()).deleteAll();
+    }
+
+    /**
+     * тестирует удаление задач по типу
+     *
+     * @throws Exception
+     */
+    @Test
+    void testSuccessDeleteTasksByFilter() throws Exception {
+        when(taskRepository.deleteChunkByFilter(isNull(), isNull(), eq(2), anyInt())).thenReturn(7);
+        mockMvc.perform(delete("/api/tasks/bulk").param("typeId", "2"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.deleted").value(7))
+                .andDo(print());
+    }
+
+    /**
+     * тестирует удаление задач без условий отбора
+     *
+     * @throws Exception
+     */
+    @Test
+    void testFailDeleteTasksByEmptyFilter() throws Exception {
+        mockMvc.perform(delete("/api/tasks/bulk"))
+                .andExpect(status().isBadRequest())
+                .andDo(print());
     }
 
     /**
@@ -276,6 +837,7 @@ class TaskApiApplicationTests {
     @Test
     void testSuccessCreateTag() throws Exception {
         Tag tag = new Tag("имя");
+        when(tagRepository.save(any(Tag.class))).thenReturn(tag);
         mockMvc.perform(post("/api/tags").contentType(MediaType.APPLICATION_JSON)
                         .content(objectMapper.writeValueAsString(tag)))
                 .andExpect(status().isCreated())
@@ -294,6 +856,8 @@ class TaskApiApplicationTests {
         when(tagRepository.findById(id)).thenReturn(Optional.of(tag));
         //mockMvc.perform((get("/api/tags/{id}", id)));
         mockMvc.perform(get("/api/tags/{id}", id)).andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"0\""))
+                .andExpect(header().stringValues(HttpHeaders.VARY, hasItem(HttpHeaders.ACCEPT)))
                 .andExpect(jsonPath("$.id").value(id))
                 .andExpect(jsonPath("$.name").value(tag.getName()))
                 .andDo(print());
@@ -336,23 +900,29 @@ class TaskApiApplicationTests {
      */
     @Test
     void testSuccessGetAllTagsThatHaveTasks() throws Exception {
-        List<Tag> tags = new ArrayList<>();
-        List<Task> tasks = new ArrayList<>();
-        fillTags(tags);
-        fillTasks(tasks);
-        for (int i = 0; i < tasks.size(); i++) {
-            tasks.get(i).setTag(tags.get(0));
-            tags.get(0).addTask(tasks.get(i));
-        }
-        when(tagRepository.findAll()).thenReturn(tags);
-        tags = new ArrayList<>(tags.stream()
-                .distinct()
-                .filter(tag -> (!tag.getTasks().isEmpty()))
-                .collect(Collectors.toList())
-        );
+        List<TagSummary> tags = List.of(new TagSummary(1, "имя1"));
+        when(tagRepository.findAllWithTasks()).thenReturn(tags);
         mockMvc.perform(get("/api/tags/tasks"))
                 .andExpect(status().isOk())
                 .andExpect(jsonPath("$.size()").value(tags.size()))
+                .andExpect(jsonPath("$[0].name").value(tags.get(0).name()))
+                .andExpect(jsonPath("$[0].tasks").doesNotExist())
+                .andExpect(jsonPath("$[0].taskCount").doesNotExist())
+                .andDo(print());
+    }
+
+    /**
+     * тестирует вывод тегов, у которых есть задача, с числом задач
+     *
+     * @throws Exception
+     */
+    @Test
+    void testSuccessGetAllTagsThatHaveTasksWithCounts() throws Exception {
+        List<TagSummary> tags = List.of(new TagSummary(1, "имя1", 3L));
+        when(tagRepository.findAllWithTaskCounts()).thenReturn(tags);
+        mockMvc.perform(get("/api/tags/tasks").param("withCounts", "true"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].taskCount").value(3))
                 .andDo(print());
     }
 
@@ -392,9 +962,9 @@ class TaskApiApplicationTests {
         tag.setName(nameTag);
         tag.setId(idTag);
         when(taskRepository.findById(id)).thenReturn(Optional.of(task));
-        when(tagRepository.findById(idTag)).thenReturn(Optional.of(tag));
+        when(tagRepository.findSummaryById(idTag)).thenReturn(Optional.of(new TagSummary(idTag, nameTag)));
         tag.addTask(task);
-        when(tagRepository.save(any(Tag.class))).thenReturn(tag);
+        when(tagRepository.findById(idTag)).thenReturn(Optional.of(tag));
         mockMvc.perform(put("/api/tags/task/{id}", idTag).contentType(MediaType.APPLICATION_JSON)
                         .content(objectMapper.writeValueAsString(task.getId())))
                 .andExpect(status().isOk())
@@ -422,9 +992,8 @@ class TaskApiApplicationTests {
         task.setTag(tag);
 
         when(taskRepository.findById(id)).thenReturn(Optional.of(task));
+        when(tagRepository.findSummaryById(idTag)).thenReturn(Optional.of(new TagSummary(idTag, nameTag)));
         when(tagRepository.findById(idTag)).thenReturn(Optional.of(tag));
-        tag.removeTask(task);
-        when(tagRepository.save(any(Tag.class))).thenReturn(tag);
         mockMvc.perform(delete("/api/tags/task/{id}", idTag).contentType(MediaType.APPLICATION_JSON)
                         .content(objectMapper.writeValueAsString(task.getId())))
                 .andExpect(status().isOk())
@@ -432,6 +1001,88 @@ class TaskApiApplicationTests {
                 .andDo(print());
     }
 
+    /**
+     * тестирует массовое присвоение тега задачам
+     *
+     * @throws Exception
+     */
+    @Test
+    void testSuccessAddTagToTasks() throws Exception {
+        int idTag = 1;
+        List<Integer> ids = List.of(1, 2, 3);
+        when(tagRepository.findSummaryById(idTag)).thenReturn(Optional.of(new TagSummary(idTag, "тег")));
+        when(taskRepository.assignTag(any(), eq(ids))).thenReturn(2);
+        mockMvc.perform(put("/api/tags/{id}/tasks", idTag).contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(ids)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.requested").value(3))
+                .andExpect(jsonPath("$.affected").value(2))
+                .andDo(print());
+        verify(tagRepository, never()).findById(idTag);
+    }
+
+    /**
+     * тестирует массовое удаление тега у задач
+     *
+     * @throws Exception
+     */
+    @Test
+    void testSuccessRemoveTagFromTasks() throws Exception {
+        int idTag = 1;
+        List<Integer> ids = List.of(1, 2, 3);
+        when(tagRepository.findSummaryById(idTag)).thenReturn(Optional.of(new TagSummary(idTag, "тег")));
+        when(taskRepository.removeTag(idTag, ids)).thenReturn(3);
+        mockMvc.perform(delete("/api/tags/{id}/tasks", idTag).contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(ids)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.affected").value(3))
+                .andDo(print());
+    }
+
+    /**
+     * тестирует массовое присвоение несуществующего тега
+     *
+     * @throws Exception
+     */
+    @Test
+    void testFailAddUnknownTagToTasks() throws Exception {
+        int idTag = 1;
+        when(tagRepository.findSummaryById(idTag)).thenReturn(Optional.empty());
+        mockMvc.perform(put("/api/tags/{id}/tasks", idTag).contentType(MediaType.APPLICATION_JSON)
+                        .content("[1, 2]"))
+                .andExpect(status().isNotFound())
+                .andDo(print());
+        verify(taskRepository, never()).assignTag(any(), any());
+    }
+
+    /**
+     * тестирует присвоение несуществующего тега задаче
+     *
+     * @throws Exception
+     */
+    @Test
+    void testFailAddTaskForUnknownTag() throws Exception {
+        int idTag = 1;
+        when(tagRepository.findSummaryById(idTag)).thenReturn(Optional.empty());
+        mockMvc.perform(put("/api/tags/task/{id}", idTag).contentType(MediaType.APPLICATION_JSON)
+                        .content("0"))
+                .andExpect(status().isNotFound())
+                .andDo(print());
+        verify(tagRepository, never()).findById(idTag);
+    }
+
+    /**
+     * тестирует вывод счетчиков кэшей
+     *
+     * @throws Exception
+     */
+    @Test
+    void testSuccessGetCacheStats() throws Exception {
+        mockMvc.perform(get("/api/cache/stats"))
+                .andExpect(status().isOk())
+                .andDo(print());
+    }
+
     /**
      * тестирует успешное удаление тега по его id
      *
@@ -440,11 +1091,110 @@ class TaskApiApplicationTests {
     @Test
     void testSuccessDeleteTag() throws Exception {
         int id = 0;
-        Tag tag = new Tag("тег");
-        doNothing().when(tagRepository).deleteById(id);
+        when(tagRepository.deleteTagById(id)).thenReturn(1);
         mockMvc.perform(delete("/api/tags/{id}", id))
                 .andExpect(status().isNoContent())
                 .andDo(print());
+        verify(taskRepository).deleteChunkByTag(eq(id), anyInt());
+        verify(tagRepository).deleteTagById(id);
+        verify(changeEventPublisher).publish("tag.deleted", Map.of("id", id));
+    }
+
+    /**
+     * тестирует сортировку задач тега по убыванию типа с задачами без типа в конце
+     */
+    @Test
+    void testSortTasksDescPutsUntypedTasksLast() {
+        Tag tag = new Tag("тег");
+        List<Task> tasks = new ArrayList<>();
+        fillTasks(tasks);
+        for (int i = 0; i < tasks.size(); i++) {
+            tasks.get(i).getType().setId(i + 1);
+        }
+        tasks.get(1).setType(null);
+        tasks.forEach(tag::addTask);
+        tag.sortTasksDesc();
+        Assertions.assertEquals(List.of(tasks.get(2), tasks.get(0), tasks.get(1)), tag.getTasks());
+    }
+
+    /**
+     * тестирует, что счетчики отдаются из снимка со временем снимка в Last-Modified,
+     * а интервал дней по умолчанию - последние 30 дней
+     *
+     * @throws Exception
+     */
+    @Test
+    void testSuccessGetStats() throws Exception {
+        Date takenAt = new Date(3_000_000L);
+        when(taskStats.current()).thenReturn(new TaskStats.Snapshot(new TaskTotals(5, 1, 2),
+                List.of(new TypeCount(1, "тип", 4)), List.of(new TagSummary(2, "тег", 3L)), 0, takenAt));
+        LocalDate to = LocalDate.of(2024, 1, 31);
+        when(taskStats.today()).thenReturn(to.minusDays(1));
+        when(taskStats.days(to.minusDays(30), to))
+                .thenReturn(new TaskStats.Days(List.of(new DayCount(LocalDate.of(2024, 1, 2), 5)), takenAt));
+
+        mockMvc.perform(get("/api/stats"))
+                .andExpect(status().isOk())
+                .andExpect(header().dateValue(HttpHeaders.LAST_MODIFIED, 3_000_000L))
+                .andExpect(jsonPath("$.taskCount").value(5))
+                .andExpect(jsonPath("$.untypedCount").value(1))
+                .andExpect(jsonPath("$.untaggedCount").value(2));
+        mockMvc.perform(get("/api/stats/types"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].name").value("тип"))
+                .andExpect(jsonPath("$[0].taskCount").value(4));
+        mockMvc.perform(get("/api/stats/tags"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].name").value("тег"))
+                .andExpect(jsonPath("$[0].taskCount").value(3));
+        mockMvc.perform(get("/api/stats/days"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].date").value("2024-01-02"))
+                .andExpect(jsonPath("$[0].taskCount").value(5));
+        verify(taskStats, times(3)).current();
+    }
+
+    /**
+     * тестирует отказ на пустой, обратный и слишком длинный интервал дней
+     *
+     * @throws Exception
+     */
+    @Test
+    void testFailGetStatsByDay() throws Exception {
+        mockMvc.perform(get("/api/stats/days").param("from", "2024-01-02").param("to", "2024-01-02"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(get("/api/stats/days").param("from", "2024-01-02").param("to", "2024-01-01"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(get("/api/stats/days").param("from", "2020-01-01").param("to", "2024-01-01"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(get("/api/stats/days").param("from", "2024-01-0x"))
+                .andExpect(status().isBadRequest());
+        verify(taskStats, never()).days(any(), any());
+    }
+
+    /**
+     * тестирует ограничение одновременных запросов при виртуальных потоках: запрос сверх лимита ждет
+     * queue-timeout и получает 503, а после завершения запроса разрешение возвращается
+     */
+    @Test
+    void testConcurrencyLimitQueuesAndRejects() {
+        ConcurrencyLimitInterceptor interceptor = new ConcurrencyLimitInterceptor(new SimpleMeterRegistry(), 1,
+                Duration.ofMillis(10));
+        MockHttpServletRequest first = new MockHttpServletRequest("GET", "/api/tasks");
+        MockHttpServletResponse firstResponse = new MockHttpServletResponse();
+        Assertions.assertTrue(interceptor.preHandle(first, firstResponse, null));
+
+        MockHttpServletResponse rejected = new MockHttpServletResponse();
+        Assertions.assertFalse(interceptor.preHandle(new MockHttpServletRequest("GET", "/api/tasks"), rejected, null));
+        Assertions.assertEquals(HttpStatus.SERVICE_UNAVAILABLE.value(), rejected.getStatus());
+        Assertions.assertEquals("1", rejected.getHeader(HttpHeaders.RETRY_AFTER));
+
+        interceptor.afterCompletion(first, firstResponse, null, null);
+        interceptor.afterCompletion(first, firstResponse, null, null);
+        Assertions.assertTrue(interceptor.preHandle(new MockHttpServletRequest("GET", "/api/tasks"),
+                new MockHttpServletResponse(), null));
+        Assertions.assertFalse(interceptor.preHandle(new MockHttpServletRequest("GET", "/api/tasks"),
+                new MockHttpServletResponse(), null));
     }
 
     public void fillTasks(List<Task> tasks) {
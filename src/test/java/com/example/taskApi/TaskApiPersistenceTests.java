@@ -0,0 +1,972 @@
+package com.example.taskApi;
+
+import com.example.taskApi.config.SqlBudgetExceededException;
+import com.example.taskApi.config.SqlBudgetInterceptor;
+import com.example.taskApi.config.SqlBudgetProperties;
+import com.example.taskApi.dto.DayCount;
+import com.example.taskApi.dto.TagSummary;
+import com.example.taskApi.dto.TaskSearch;
+import com.example.taskApi.models.Tag;
+import com.example.taskApi.models.Task;
+import com.example.taskApi.models.TaskType;
+import com.example.taskApi.repository.TagRepository;
+import com.example.taskApi.repository.TaskRepository;
+import com.example.taskApi.repository.TaskTypeRepository;
+import com.example.taskApi.service.ChangeEventPublisher;
+import com.example.taskApi.service.TableVersionCompactor;
+import com.example.taskApi.service.TaskAgenda;
+import com.example.taskApi.service.TaskStats;
+import com.example.taskApi.service.TaskWriteBehind;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.persistence.EntityManagerFactory;
+import org.awaitility.Awaitility;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.AdditionalAnswers;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.CannotGetJdbcConnectionException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.test.web.servlet.RequestBuilder;
+import org.springframework.web.method.HandlerMethod;
+
+import javax.sql.DataSource;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.patch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * тесты запросов к базе на встроенной H2
+ */
+@SpringBootTest(properties = {
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+        "spring.jpa.properties.hibernate.generate_statistics=true",
+        "taskapi.delete.chunk-size=2",
+        "taskapi.stats.refresh-after-mutations=2",
+        "taskapi.sql.mode=fail",
+        // счетчики Statistics общие, поэтому перенос журнала версий вызывается тестами явно
+        "taskapi.table-version.compact-interval-ms=86400000"
+})
+@AutoConfigureMockMvc
+@AutoConfigureTestDatabase
+class TaskApiPersistenceTests {
+
+    @Autowired
+    private TaskRepository taskRepository;
+
+    @Autowired
+    private TaskTypeRepository taskTypeRepository;
+
+    @Autowired
+    private TagRepository tagRepository;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private TableVersionCompactor tableVersionCompactor;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private Controller controller;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private TaskAgenda taskAgenda;
+
+    @Autowired
+    private TaskStats taskStats;
+
+    @Autowired
+    private ChangeEventPublisher changeEventPublisher;
+
+    private Statistics statistics;
+
+    @BeforeEach
+    void setUp() {
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        taskRepository.deleteAllInBatch();
+        tagRepository.deleteAllInBatch();
+        taskTypeRepository.deleteAllInBatch();
+        taskAgenda.clear();
+    }
+
+    /**
+     * тестирует, что число sql-запросов каждого эндпоинта на чтение не зависит от числа строк
+     *
+     * @throws Exception
+     */
+    @Test
+    void testStatementCountDoesNotGrowWithRows() throws Exception {
+        Map<String, Long> small = countStatements(2);
+        Map<String, Long> large = countStatements(20);
+        Assertions.assertEquals(small, large);
+    }
+
+    /**
+     * тестирует, что в список тегов с задачами попадают только непустые теги с верным числом задач
+     *
+     * @throws Exception
+     */
+    @Test
+    void testTagsWithTasksAreComputedInDatabase() throws Exception {
+        Tag used = tagRepository.save(new Tag("занятый"));
+        tagRepository.save(new Tag("пустой"));
+        for (int i = 0; i < 2; i++) {
+            Task task = new Task("имя" + i, "описание" + i, new Date());
+            task.setTag(used);
+            taskRepository.save(task);
+        }
+        Assertions.assertEquals(List.of(new TagSummary(used.getId(), used.getName())),
+                tagRepository.findAllWithTasks());
+        Assertions.assertEquals(List.of(new TagSummary(used.getId(), used.getName(), 2L)),
+                tagRepository.findAllWithTaskCounts());
+    }
+
+    /**
+     * тестирует, что повторные поиски типа задачи и тега идут из кэша, а изменения обоих репозиториев,
+     * в том числе saveAll и deleteAllInBatch, сбрасывают кэш
+     */
+    @Test
+    void testTaskTypeAndTagLookupsAreCached() {
+        TaskType type = new TaskType();
+        type.setName("тип");
+        type = taskTypeRepository.save(type);
+        Tag tag = tagRepository.save(new Tag("тег"));
+        taskTypeRepository.findById(type.getId());
+        tagRepository.findSummaryById(tag.getId());
+
+        statistics.clear();
+        Assertions.assertEquals(type.getName(), taskTypeRepository.findById(type.getId()).orElseThrow().getName());
+        Assertions.assertEquals(tag.getName(), tagRepository.findSummaryById(tag.getId()).orElseThrow().name());
+        Assertions.assertEquals(0, statistics.getPrepareStatementCount());
+
+        tag.setName("тег1");
+        tag = tagRepository.save(tag);
+        Assertions.assertEquals("тег1", tagRepository.findSummaryById(tag.getId()).orElseThrow().name());
+        tag.setName("тег2");
+        tagRepository.saveAll(List.of(tag));
+        Assertions.assertEquals("тег2", tagRepository.findSummaryById(tag.getId()).orElseThrow().name());
+        tagRepository.deleteAllInBatch();
+        Assertions.assertTrue(tagRepository.findSummaryById(tag.getId()).isEmpty());
+
+        type.setName("тип1");
+        taskTypeRepository.saveAll(List.of(type));
+        Assertions.assertEquals("тип1", taskTypeRepository.findById(type.getId()).orElseThrow().getName());
+        Assertions.assertEquals(type.getId(), taskTypeRepository.getByName("тип1").getId());
+        taskTypeRepository.deleteAllInBatch();
+        Assertions.assertTrue(taskTypeRepository.findById(type.getId()).isEmpty());
+        Assertions.assertNull(taskTypeRepository.getByName("тип1"));
+    }
+
+    /**
+     * тестирует пакетную загрузку задач несколькими пачками
+     *
+     * @throws Exception
+     */
+    @Test
+    void testCreateTasksBatchInChunks() throws Exception {
+        int size = 2500;
+        StringBuilder body = new StringBuilder();
+        for (int i = 0; i < size; i++) {
+            body.append("{\"name\":\"имя").append(i).append("\",\"date\":\"2023-08-01T10:00:00.000+00:00\"}\n");
+        }
+        mockMvc.perform(post("/api/tasks/batch").contentType(MediaType.APPLICATION_NDJSON).content(body.toString()))
+                .andExpect(status().isCreated())
+                .andExpect(jsonPath("$.accepted").value(size));
+        Assertions.assertEquals(size, taskRepository.count());
+    }
+
+    /**
+     * тестирует массовое присвоение и удаление тега без загрузки тега и задач
+     *
+     * @throws Exception
+     */
+    @Test
+    void testBulkTagAssignment() throws Exception {
+        Tag tag = tagRepository.save(new Tag("тег"));
+        List<Integer> ids = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            ids.add(taskRepository.save(new Task("имя" + i, "описание" + i, new Date())).getId());
+        }
+        tagRepository.findSummaryById(tag.getId());
+
+        statistics.clear();
+        mockMvc.perform(put("/api/tags/{id}/tasks", tag.getId()).contentType(MediaType.APPLICATION_JSON)
+                        .content(ids.toString()))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.affected").value(3));
+        Assertions.assertEquals(1, statistics.getPrepareStatementCount());
+        Assertions.assertEquals(3L, tagRepository.findAllWithTaskCounts().get(0).taskCount());
+
+        mockMvc.perform(delete("/api/tags/{id}/tasks", tag.getId()).contentType(MediaType.APPLICATION_JSON)
+                        .content(ids.subList(0, 2).toString()))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.affected").value(2));
+        Assertions.assertEquals(1L, tagRepository.findAllWithTaskCounts().get(0).taskCount());
+    }
+
+    /**
+     * тестирует, что ETag списков меняется после изменения задачи и массового присвоения тега
+     *
+     * @throws Exception
+     */
+    @Test
+    void testListEtagsFollowUpdates() throws Exception {
+        TaskType type = new TaskType();
+        type.setName("тип");
+        type = taskTypeRepository.save(type);
+        Task task = new Task("имя", "описание", new Date());
+        task.setType(type);
+        task = taskRepository.save(task);
+        Tag tag = tagRepository.save(new Tag("тег"));
+        String tasksEtag = etag(get("/api/tasks"));
+        String tagsEtag = etag(get("/api/tags"));
+        mockMvc.perform(get("/api/tasks").header(HttpHeaders.IF_NONE_MATCH, tasksEtag))
+                .andExpect(status().isNotModified());
+
+        task.setName("имя1");
+        taskRepository.save(task);
+        Assertions.assertNotEquals(tasksEtag, etag(get("/api/tasks")));
+        tasksEtag = etag(get("/api/tasks"));
+
+        mockMvc.perform(put("/api/tags/{id}/tasks", tag.getId()).contentType(MediaType.APPLICATION_JSON)
+                        .content(List.of(task.getId()).toString()))
+                .andExpect(status().isOk());
+        Assertions.assertNotEquals(tasksEtag, etag(get("/api/tasks")));
+        Assertions.assertNotEquals(tagsEtag, etag(get("/api/tags")));
+        tasksEtag = etag(get("/api/tasks"));
+        tagsEtag = etag(get("/api/tags"));
+
+        type.setName("тип1");
+        taskTypeRepository.save(type);
+        Assertions.assertNotEquals(tasksEtag, etag(get("/api/tasks")));
+        Assertions.assertNotEquals(tagsEtag, etag(get("/api/tags")));
+    }
+
+    /**
+     * тестирует, что два писателя в task не ждут друг друга из-за версии таблицы: второе изменение
+     * проходит, пока первое не закоммичено, а после коммита обоих версия выросла на два
+     * и не меняется при переносе журнала в счетчик
+     *
+     * @throws Exception
+     */
+    @Test
+    void testConcurrentWritersAreNotSerializedByTableVersion() throws Exception {
+        Task first = taskRepository.save(new Task("имя1", "описание1", new Date()));
+        Task second = taskRepository.save(new Task("имя2", "описание2", new Date()));
+        long before = taskRepository.findTableVersion().version();
+
+        try (Connection writer1 = dataSource.getConnection(); Connection writer2 = dataSource.getConnection()) {
+            writer1.setAutoCommit(false);
+            writer2.setAutoCommit(false);
+            try (Statement statement = writer2.createStatement()) {
+                statement.execute("SET LOCK_TIMEOUT 1000");
+            }
+            rename(writer1, first.getId(), "имя1-1");
+            // с общей строкой-счетчиком здесь было бы ожидание блокировки writer1 до LOCK_TIMEOUT
+            rename(writer2, second.getId(), "имя2-1");
+            writer2.commit();
+            Assertions.assertEquals(before + 1, taskRepository.findTableVersion().version());
+            writer1.commit();
+        }
+        Assertions.assertEquals(before + 2, taskRepository.findTableVersion().version());
+
+        Assertions.assertTrue(tableVersionCompactor.compact() > 0);
+        Assertions.assertEquals(0, tableVersionCompactor.compact());
+        Assertions.assertEquals(before + 2, taskRepository.findTableVersion().version());
+    }
+
+    private static void rename(Connection connection, int id, String name) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement("UPDATE task SET name = ? WHERE id = ?")) {
+            statement.setString(1, name);
+            statement.setInt(2, id);
+            Assertions.assertEquals(1, statement.executeUpdate());
+        }
+    }
+
+    /**
+     * тестирует, что переподключившийся клиент получает события после Last-Event-ID
+     *
+     * @throws Exception
+     */
+    @Test
+    void testEventsResumeFromLastEventId() throws Exception {
+        MvcResult live = mockMvc.perform(get("/api/events"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        String first = mockMvc.perform(post("/api/tags").contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"name\":\"тег\"}"))
+                .andExpect(status().isCreated())
+                .andReturn().getResponse().getContentAsString();
+        int tagId = objectMapper.readTree(first).get("id").asInt();
+        mockMvc.perform(put("/api/tags/{id}", tagId).contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"name\":\"тег1\"}"))
+                .andExpect(status().isOk());
+        mockMvc.perform(delete("/api/tags/{id}", tagId))
+                .andExpect(status().isNoContent());
+
+        String all = awaitEvents(live, "event:tag.deleted");
+        Matcher created = Pattern.compile("id:((\\d+)-\\d+)\nevent:tag.created\ndata:\\{\"id\":" + tagId + ",")
+                .matcher(all);
+        Assertions.assertTrue(created.find(), all);
+        String createdId = created.group(1);
+        String epoch = created.group(2);
+
+        String resumed = awaitEvents(mockMvc.perform(get("/api/events").header("Last-Event-ID", createdId))
+                .andExpect(request().asyncStarted())
+                .andReturn(), "event:tag.deleted");
+        Assertions.assertFalse(resumed.contains("event:tag.created"), resumed);
+        Assertions.assertTrue(resumed.contains("event:tag.updated"), resumed);
+        Assertions.assertTrue(resumed.contains("\"name\":\"тег1\""), resumed);
+
+        // id прошлого запуска и id впереди последнего события
+        for (String stale : List.of("1-" + tagId, epoch + "-999999", "500")) {
+            awaitEvents(mockMvc.perform(get("/api/events").header("Last-Event-ID", stale))
+                    .andExpect(request().asyncStarted())
+                    .andReturn(), "event:" + ChangeEventPublisher.RESET_EVENT);
+        }
+    }
+
+    private static String awaitEvents(MvcResult result, String expected) {
+        return Awaitility.await().atMost(Duration.ofSeconds(5))
+                .until(() -> result.getResponse().getContentAsString(StandardCharsets.UTF_8),
+                        content -> content.contains(expected));
+    }
+
+    /**
+     * тестирует, что запросы к эндпоинтам и репозиториям попадают в таймеры, а статистика Hibernate в метрики
+     *
+     * @throws Exception
+     */
+    @Test
+    void testRequestsAndRepositoryCallsAreTimed() throws Exception {
+        taskRepository.save(new Task("имя", "описание", new Date()));
+        mockMvc.perform(get("/api/tasks")).andExpect(status().isOk());
+
+        Assertions.assertTrue(meterRegistry.get("http.server.requests").tag("uri", "/api/tasks").timer().count() > 0);
+        Assertions.assertTrue(meterRegistry.get("spring.data.repository.invocations")
+                .tag("repository", "TaskRepository").tag("method", "findAll").timer().count() > 0);
+        Assertions.assertTrue(meterRegistry.get("hibernate.statements").functionCounter().count() > 0);
+    }
+
+    /**
+     * тестирует, что обработчик сверх бюджета sql-запросов в режиме fail бросает исключение с числом запросов
+     *
+     * @throws Exception
+     */
+    @Test
+    void testSqlBudgetExceededFailsRequest() throws Exception {
+        Tag tag = tagRepository.save(new Tag("тег"));
+        SqlBudgetInterceptor interceptor = new SqlBudgetInterceptor(new SqlBudgetProperties(
+                SqlBudgetProperties.Mode.FAIL, -1, Map.of("getTagById", 0), Duration.ofMinutes(1)));
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/tags/" + tag.getId());
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        HandlerMethod handler = new HandlerMethod(controller, Controller.class.getMethod("getTagById", int.class));
+
+        interceptor.preHandle(request, response, handler);
+        try {
+            tagRepository.findById(tag.getId());
+            SqlBudgetExceededException e = Assertions.assertThrows(SqlBudgetExceededException.class,
+                    () -> interceptor.postHandle(request, response, handler, null));
+            Assertions.assertTrue(e.getMessage().contains("made 1 SQL statements"), e.getMessage());
+        } finally {
+            interceptor.afterCompletion(request, response, handler, null);
+        }
+    }
+
+    /**
+     * тестирует отложенную запись: изменения видны сразу, сливаются по задаче
+     * и записываются одной выборкой и UPDATE только измененных столбцов
+     */
+    @Test
+    void testWriteBehindCoalescesUpdates() {
+        TaskType type = new TaskType();
+        type.setName("тип");
+        type = taskTypeRepository.save(type);
+        Task first = taskRepository.save(new Task("имя1", "описание1", new Date()));
+        Task second = taskRepository.save(new Task("имя2", "описание2", new Date()));
+        TaskWriteBehind writeBehind = writeBehind(taskRepository, TaskWriteBehind.Durability.INTERVAL);
+
+        for (int i = 0; i < 5; i++) {
+            writeBehind.update(first.getId(), "имя1-" + i, "описание1", first.getDate());
+        }
+        writeBehind.updateType(first.getId(), type);
+        writeBehind.update(second.getId(), "имя2-0", "описание2", second.getDate());
+        Assertions.assertTrue(writeBehind.update(-1, "имя", "описание", new Date()).isEmpty());
+        Assertions.assertEquals("имя1-4", writeBehind.find(first.getId()).orElseThrow().getName());
+        Assertions.assertEquals(type.getId(), writeBehind.find(first.getId()).orElseThrow().getTypeId());
+        Assertions.assertEquals("имя1", taskRepository.findById(first.getId()).orElseThrow().getName());
+
+        statistics.clear();
+        writeBehind.flush();
+        Assertions.assertEquals(2, statistics.getEntityUpdateCount());
+        Assertions.assertEquals(3, statistics.getPrepareStatementCount());
+        Assertions.assertTrue(writeBehind.find(first.getId()).isEmpty());
+        Task stored = taskRepository.findById(first.getId()).orElseThrow();
+        Assertions.assertEquals("имя1-4", stored.getName());
+        Assertions.assertEquals(type.getId(), stored.getTypeId());
+        Assertions.assertEquals("имя2-0", taskRepository.findById(second.getId()).orElseThrow().getName());
+    }
+
+    /**
+     * тестирует, что задача с постоянной ошибкой записи не мешает остальным и сразу отбрасывается,
+     * а при durability=sync ошибка записи возвращается запросу
+     */
+    @Test
+    void testWriteBehindDropsFailingTask() {
+        TaskType missing = new TaskType();
+        missing.setId(Integer.MAX_VALUE);
+        missing.setName("нет");
+        Task good = taskRepository.save(new Task("имя1", "описание1", new Date()));
+        Task bad = taskRepository.save(new Task("имя2", "описание2", new Date()));
+        TaskWriteBehind writeBehind = writeBehind(taskRepository, TaskWriteBehind.Durability.INTERVAL);
+        double dropped = meterRegistry.get("taskapi.write-behind.dropped").counter().count();
+
+        writeBehind.update(good.getId(), "имя1-0", "описание1", good.getDate());
+        writeBehind.updateType(bad.getId(), missing);
+        writeBehind.flush();
+        Assertions.assertEquals("имя1-0", taskRepository.findById(good.getId()).orElseThrow().getName());
+        Assertions.assertTrue(writeBehind.find(good.getId()).isEmpty());
+        Assertions.assertTrue(writeBehind.find(bad.getId()).isEmpty());
+        Assertions.assertEquals(dropped + 1, meterRegistry.get("taskapi.write-behind.dropped").counter().count());
+        Assertions.assertNull(taskRepository.findById(bad.getId()).orElseThrow().getType());
+
+        TaskWriteBehind sync = writeBehind(taskRepository, TaskWriteBehind.Durability.SYNC);
+        sync.update(good.getId(), "имя1-1", "описание1", good.getDate());
+        Assertions.assertEquals("имя1-1", taskRepository.findById(good.getId()).orElseThrow().getName());
+        Assertions.assertThrows(DataAccessException.class, () -> sync.updateType(bad.getId(), missing));
+        Assertions.assertTrue(sync.find(bad.getId()).isEmpty());
+    }
+
+    /**
+     * тестирует, что ошибка соединения не теряет изменение, а повторяется с задержкой, запрос при durability=sync
+     * ждет не дольше sync-timeout, а изменение поверх чужого изменения задачи отбрасывается как конфликт
+     */
+    @Test
+    void testWriteBehindRetriesTransientErrorsAndDropsConflicts() {
+        Task task = taskRepository.save(new Task("имя", "описание", new Date()));
+        TaskRepository flaky = Mockito.mock(TaskRepository.class, AdditionalAnswers.delegatesTo(taskRepository));
+        CannotGetJdbcConnectionException down = new CannotGetJdbcConnectionException("down");
+        Mockito.doThrow(down).doThrow(down).doAnswer(AdditionalAnswers.delegatesTo(taskRepository))
+                .when(flaky).findAllById(Mockito.any());
+        TaskWriteBehind writeBehind = writeBehind(flaky, TaskWriteBehind.Durability.INTERVAL);
+        double dropped = meterRegistry.get("taskapi.write-behind.dropped").counter().count();
+
+        writeBehind.update(task.getId(), "имя1", "описание", task.getDate());
+        writeBehind.flush();
+        writeBehind.flush();
+        // пачка и запись по одной не прошли, повтор ждет задержки
+        Mockito.verify(flaky, Mockito.times(2)).findAllById(Mockito.any());
+        Assertions.assertEquals("имя1", writeBehind.find(task.getId()).orElseThrow().getName());
+        Awaitility.await().atMost(Duration.ofSeconds(5)).until(() -> {
+            writeBehind.flush();
+            return writeBehind.find(task.getId()).isEmpty();
+        });
+        Assertions.assertEquals("имя1", taskRepository.findById(task.getId()).orElseThrow().getName());
+        Assertions.assertEquals(dropped, meterRegistry.get("taskapi.write-behind.dropped").counter().count());
+
+        TaskRepository unavailable = Mockito.mock(TaskRepository.class, AdditionalAnswers.delegatesTo(taskRepository));
+        Mockito.doThrow(down).when(unavailable).findAllById(Mockito.any());
+        TaskWriteBehind sync = writeBehind(unavailable, TaskWriteBehind.Durability.SYNC);
+        Assertions.assertThrows(QueryTimeoutException.class,
+                () -> sync.update(task.getId(), "имя2", "описание", task.getDate()));
+        Assertions.assertTrue(sync.find(task.getId()).isPresent());
+        sync.discard(task.getId());
+
+        double conflicts = meterRegistry.get("taskapi.write-behind.conflicts").counter().count();
+        writeBehind.update(task.getId(), "имя3", "описание", task.getDate());
+        Task other = taskRepository.findById(task.getId()).orElseThrow();
+        other.setName("чужое");
+        taskRepository.save(other);
+        writeBehind.flush();
+        Assertions.assertTrue(writeBehind.find(task.getId()).isEmpty());
+        Assertions.assertEquals(conflicts + 1, meterRegistry.get("taskapi.write-behind.conflicts").counter().count());
+        Assertions.assertEquals("чужое", taskRepository.findById(task.getId()).orElseThrow().getName());
+    }
+
+    private TaskWriteBehind writeBehind(TaskRepository repository, TaskWriteBehind.Durability durability) {
+        return new TaskWriteBehind(repository, transactionManager, meterRegistry, true, 1000, Duration.ofMillis(50),
+                Duration.ofSeconds(1), Duration.ofMillis(300), durability);
+    }
+
+    /**
+     * тестирует версии задач: PATCH одним UPDATE без чтения, отказ по устаревшему If-Match
+     * и отказ при сохранении задачи, которую успели изменить
+     *
+     * @throws Exception
+     */
+    @Test
+    void testOptimisticLockingAndPatch() throws Exception {
+        Task task = taskRepository.save(new Task("имя", "описание", new Date()));
+        Tag tag = tagRepository.save(new Tag("тег"));
+        mockMvc.perform(get("/api/tasks/{id}", task.getId()))
+                .andExpect(header().string(HttpHeaders.ETAG, "\"0\""));
+
+        statistics.clear();
+        mockMvc.perform(patch("/api/tasks/{id}", task.getId()).contentType(MediaType.APPLICATION_JSON)
+                        .header(HttpHeaders.IF_MATCH, "\"0\"")
+                        .content("{\"name\":\"имя1\"}"))
+                .andExpect(status().isNoContent())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"1\""));
+        Assertions.assertEquals(1, statistics.getPrepareStatementCount());
+        Assertions.assertEquals(0, statistics.getEntityLoadCount());
+        Task patched = taskRepository.findById(task.getId()).orElseThrow();
+        Assertions.assertEquals("имя1", patched.getName());
+        Assertions.assertEquals("описание", patched.getDescription());
+        Assertions.assertEquals(1, patched.getVersion());
+
+        mockMvc.perform(patch("/api/tasks/{id}", task.getId()).contentType(MediaType.APPLICATION_JSON)
+                        .header(HttpHeaders.IF_MATCH, "\"0\"")
+                        .content("{\"name\":\"имя2\"}"))
+                .andExpect(status().isPreconditionFailed());
+        mockMvc.perform(patch("/api/tasks/{id}", -1).contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"name\":\"имя2\"}"))
+                .andExpect(status().isNotFound());
+        String body = objectMapper.writeValueAsString(new Task("имя3", "описание3", new Date()));
+        mockMvc.perform(put("/api/tasks/{id}", task.getId()).contentType(MediaType.APPLICATION_JSON)
+                        .header(HttpHeaders.IF_MATCH, "\"0\"").content(body))
+                .andExpect(status().isPreconditionFailed());
+        mockMvc.perform(put("/api/tasks/{id}", task.getId()).contentType(MediaType.APPLICATION_JSON)
+                        .header(HttpHeaders.IF_MATCH, "\"1\"").content(body))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"2\""));
+
+        Task first = taskRepository.findById(task.getId()).orElseThrow();
+        Task second = taskRepository.findById(task.getId()).orElseThrow();
+        first.setName("первый");
+        taskRepository.save(first);
+        second.setName("второй");
+        Assertions.assertThrows(ObjectOptimisticLockingFailureException.class, () -> taskRepository.save(second));
+
+        taskRepository.assignTag(tag, List.of(task.getId()));
+        Assertions.assertEquals(4, taskRepository.findById(task.getId()).orElseThrow().getVersion());
+        Assertions.assertEquals("первый", taskRepository.findById(task.getId()).orElseThrow().getName());
+    }
+
+    /**
+     * тестирует, что изменения через сервисы идут одной транзакцией, а ответ без open-in-view
+     * сериализуется из уже загруженных задач, тегов и типов
+     *
+     * @throws Exception
+     */
+    @Test
+    void testUpdatesRunInOneTransaction() throws Exception {
+        TaskType type = new TaskType();
+        type.setName("тип");
+        type = taskTypeRepository.save(type);
+        Task task = taskRepository.save(new Task("имя", "описание", new Date()));
+        Tag tag = tagRepository.save(new Tag("тег"));
+
+        statistics.clear();
+        mockMvc.perform(put("/api/tasks/type/id/{id}", task.getId()).contentType(MediaType.APPLICATION_JSON)
+                        .content(String.valueOf(type.getId())))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.type.name").value("тип"));
+        Assertions.assertEquals(1, statistics.getTransactionCount());
+
+        statistics.clear();
+        mockMvc.perform(put("/api/tags/task/{id}", tag.getId()).contentType(MediaType.APPLICATION_JSON)
+                        .content(String.valueOf(task.getId())))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.tasks[0].id").value(task.getId()))
+                .andExpect(jsonPath("$.tasks[0].type.name").value("тип"));
+        Assertions.assertEquals(1, statistics.getTransactionCount());
+
+        statistics.clear();
+        mockMvc.perform(put("/api/tasks/{id}", task.getId()).contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(new Task("имя1", "описание1", new Date()))))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.type.name").value("тип"));
+        Assertions.assertEquals(1, statistics.getTransactionCount());
+    }
+
+    /**
+     * тестирует, что список задач дня читается из базы один раз, а потом следует за изменениями задач
+     * и совпадает с тем, что вернул бы запрос
+     *
+     * @throws Exception
+     */
+    @Test
+    void testAgendaFollowsUpdates() throws Exception {
+        TaskType low = new TaskType();
+        low.setName("низкий");
+        low = taskTypeRepository.save(low);
+        TaskType high = new TaskType();
+        high.setName("высокий");
+        high = taskTypeRepository.save(high);
+        Tag tag = tagRepository.save(new Tag("тег"));
+        List<Integer> ids = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            Task task = new Task("имя" + i, "описание" + i, new Date());
+            task.setType(low);
+            task.setTag(tag);
+            ids.add(taskRepository.save(task).getId());
+        }
+        String today = LocalDate.now().toString();
+        mockMvc.perform(get("/api/tasks/date").param("date", today))
+                .andExpect(jsonPath("$[*].id").value(ids));
+
+        statistics.clear();
+        mockMvc.perform(get("/api/tasks/date").param("date", today))
+                .andExpect(jsonPath("$[*].id").value(ids));
+        Assertions.assertEquals(0, statistics.getPrepareStatementCount());
+
+        mockMvc.perform(put("/api/tasks/type/id/{id}", ids.get(2)).contentType(MediaType.APPLICATION_JSON)
+                        .content(String.valueOf(high.getId())))
+                .andExpect(status().isOk());
+        mockMvc.perform(delete("/api/tasks/{id}", ids.get(0)))
+                .andExpect(status().isNoContent());
+        Date yesterday = Date.from(LocalDate.now().minusDays(1).atStartOfDay(ZoneId.systemDefault()).toInstant());
+        Task untagged = taskRepository.save(new Task("без тега", "описание", new Date()));
+        mockMvc.perform(put("/api/tasks/type/id/{id}", untagged.getId()).contentType(MediaType.APPLICATION_JSON)
+                        .content(String.valueOf(high.getId())))
+                .andExpect(status().isOk());
+
+        statistics.clear();
+        List<Integer> expected = new ArrayList<>(List.of(ids.get(2), ids.get(1)));
+        mockMvc.perform(get("/api/tasks/date").param("date", today))
+                .andExpect(jsonPath("$[*].id").value(expected))
+                .andExpect(jsonPath("$[0].type.name").value("высокий"));
+        Assertions.assertEquals(0, statistics.getPrepareStatementCount());
+
+        mockMvc.perform(put("/api/tasks/{id}", ids.get(2)).contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(new Task("имя2", "описание2", yesterday))))
+                .andExpect(status().isOk());
+        mockMvc.perform(get("/api/tasks/date").param("date", today))
+                .andExpect(jsonPath("$[*].id").value(new ArrayList<>(List.of(ids.get(1)))));
+        taskAgenda.clear();
+        mockMvc.perform(get("/api/tasks/date").param("date", today))
+                .andExpect(jsonPath("$[*].id").value(new ArrayList<>(List.of(ids.get(1)))));
+        mockMvc.perform(get("/api/tasks/date").param("date", LocalDate.now().minusDays(1).toString()))
+                .andExpect(jsonPath("$[*].id").value(new ArrayList<>(List.of(ids.get(2)))));
+    }
+
+    /**
+     * тестирует счетчики по типам, тегам и дням, посчитанные в базе, и пересчет снимка
+     * только после refresh-after-mutations изменений
+     *
+     * @throws Exception
+     */
+    @Test
+    void testStatsAreCountedInDatabase() throws Exception {
+        TaskType low = new TaskType();
+        low.setName("низкий");
+        low = taskTypeRepository.save(low);
+        TaskType high = new TaskType();
+        high.setName("высокий");
+        high = taskTypeRepository.save(high);
+        Tag used = tagRepository.save(new Tag("занятый"));
+        Tag empty = tagRepository.save(new Tag("пустой"));
+        LocalDate today = LocalDate.now();
+        Date yesterday = Date.from(today.minusDays(1).atStartOfDay(ZoneId.systemDefault()).toInstant());
+        List<Integer> ids = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            Task task = new Task("имя" + i, "описание" + i, new Date());
+            task.setType(low);
+            task.setTag(used);
+            ids.add(taskRepository.save(task).getId());
+        }
+        Task old = new Task("вчера", "описание", yesterday);
+        old.setType(high);
+        taskRepository.save(old);
+        taskRepository.save(new Task("без типа", "описание", new Date()));
+        taskStats.scheduledRefresh();
+
+        mockMvc.perform(get("/api/stats"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.taskCount").value(4))
+                .andExpect(jsonPath("$.untypedCount").value(1))
+                .andExpect(jsonPath("$.untaggedCount").value(2));
+        mockMvc.perform(get("/api/stats/types"))
+                .andExpect(jsonPath("$[*].id").value(new ArrayList<>(List.of(low.getId(), high.getId()))))
+                .andExpect(jsonPath("$[*].taskCount").value(new ArrayList<>(List.of(2, 1))));
+        mockMvc.perform(get("/api/stats/tags"))
+                .andExpect(jsonPath("$[*].id").value(new ArrayList<>(List.of(used.getId(), empty.getId()))))
+                .andExpect(jsonPath("$[*].taskCount").value(new ArrayList<>(List.of(2, 0))));
+        mockMvc.perform(get("/api/stats/days").param("from", today.minusDays(1).toString())
+                        .param("to", today.plusDays(1).toString()))
+                .andExpect(jsonPath("$[*].date").value(
+                        new ArrayList<>(List.of(today.minusDays(1).toString(), today.toString()))))
+                .andExpect(jsonPath("$[*].taskCount").value(new ArrayList<>(List.of(1, 3))));
+
+        statistics.clear();
+        mockMvc.perform(get("/api/stats/types"))
+                .andExpect(status().isOk());
+        Assertions.assertEquals(0, statistics.getPrepareStatementCount());
+
+        mockMvc.perform(delete("/api/tasks/{id}", ids.get(0)))
+                .andExpect(status().isNoContent());
+        mockMvc.perform(get("/api/stats"))
+                .andExpect(jsonPath("$.taskCount").value(4));
+        mockMvc.perform(delete("/api/tasks/{id}", ids.get(1)))
+                .andExpect(status().isNoContent());
+        mockMvc.perform(get("/api/stats"))
+                .andExpect(jsonPath("$.taskCount").value(2))
+                .andExpect(jsonPath("$.untaggedCount").value(2));
+        mockMvc.perform(get("/api/stats/tags"))
+                .andExpect(jsonPath("$[*].taskCount").value(new ArrayList<>(List.of(0, 0))));
+
+        // одно массовое событие на две строки - уже refresh-after-mutations изменений
+        taskRepository.save(new Task("ещё", "описание", new Date()));
+        taskStats.scheduledRefresh();
+        mockMvc.perform(delete("/api/tasks"))
+                .andExpect(status().isNoContent());
+        mockMvc.perform(get("/api/stats"))
+                .andExpect(jsonPath("$.taskCount").value(0));
+    }
+
+    /**
+     * тестирует, что счетчики по дням, подсчет которых начался до пересчета снимка, не сохраняются:
+     * иначе они отдавались бы до следующего пересчета
+     */
+    @Test
+    void testStatsDaysCountedBeforeRefreshAreNotCached() {
+        LocalDate today = LocalDate.now();
+        taskRepository.save(new Task("имя", "описание", new Date()));
+        taskRepository.save(new Task("ещё", "описание", new Date()));
+        TaskRepository racing = Mockito.mock(TaskRepository.class, AdditionalAnswers.delegatesTo(taskRepository));
+        TaskStats stats = new TaskStats(racing, tagRepository, changeEventPublisher, transactionManager, 100, 10, "");
+        Mockito.doAnswer(invocation -> {
+            // подсчет видел базу до второй задачи, а снимок пересчитан, пока он шел
+            stats.scheduledRefresh();
+            return List.of(new DayCount(today, 1));
+        }).doAnswer(AdditionalAnswers.delegatesTo(taskRepository))
+                .when(racing).countByDay(Mockito.any(), Mockito.any());
+
+        Assertions.assertEquals(2, stats.days(today, today.plusDays(1)).days().get(0).taskCount());
+        Assertions.assertEquals(2, stats.days(today, today.plusDays(1)).days().get(0).taskCount());
+        Mockito.verify(racing, Mockito.times(2)).countByDay(Mockito.any(), Mockito.any());
+    }
+
+    /**
+     * тестирует удаление тега с задачами, удаление по типу и полное удаление пачками
+     *
+     * @throws Exception
+     */
+    @Test
+    void testBulkDeletesInChunks() throws Exception {
+        TaskType type = new TaskType();
+        type.setName("тип");
+        type = taskTypeRepository.save(type);
+        Tag tag = tagRepository.save(new Tag("тег"));
+        for (int i = 0; i < 5; i++) {
+            Task task = new Task("имя" + i, "описание" + i, new Date());
+            task.setTag(tag);
+            taskRepository.save(task);
+        }
+        for (int i = 0; i < 3; i++) {
+            Task task = new Task("имя" + i, "описание" + i, new Date());
+            task.setType(type);
+            taskRepository.save(task);
+        }
+        taskRepository.save(new Task("имя", "описание", new Date()));
+
+        mockMvc.perform(delete("/api/tags/{id}", tag.getId()))
+                .andExpect(status().isNoContent());
+        Assertions.assertFalse(tagRepository.existsById(tag.getId()));
+        Assertions.assertEquals(4, taskRepository.count());
+
+        mockMvc.perform(delete("/api/tasks/bulk").param("typeId", String.valueOf(type.getId())))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.deleted").value(3));
+        Assertions.assertEquals(1, taskRepository.count());
+
+        mockMvc.perform(delete("/api/tasks"))
+                .andExpect(status().isNoContent());
+        Assertions.assertEquals(0, taskRepository.count());
+    }
+
+    /**
+     * тестирует, что задачи тега приходят из базы по убыванию типа, задачи без типа в конце
+     *
+     * @throws Exception
+     */
+    @Test
+    void testTagTasksAreLoadedSortedByTypeDesc() throws Exception {
+        Tag tag = tagRepository.save(new Tag("тег"));
+        List<TaskType> types = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            TaskType type = new TaskType();
+            type.setName("тип" + i);
+            types.add(taskTypeRepository.save(type));
+        }
+        for (TaskType type : Arrays.asList(types.get(1), null, types.get(2), types.get(0))) {
+            Task task = new Task("имя", "описание", new Date());
+            task.setType(type);
+            task.setTag(tag);
+            taskRepository.save(task);
+        }
+        mockMvc.perform(get("/api/tags/{id}", tag.getId()))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.tasks[0].typeId").value(types.get(2).getId()))
+                .andExpect(jsonPath("$.tasks[1].typeId").value(types.get(1).getId()))
+                .andExpect(jsonPath("$.tasks[2].typeId").value(types.get(0).getId()))
+                .andExpect(jsonPath("$.tasks[3].typeId").isEmpty());
+    }
+
+    /**
+     * тестирует поиск задач с отбором, сортировкой и выбором полей
+     */
+    @Test
+    void testSearchTasksSelectsRequestedFields() {
+        TaskType type = new TaskType();
+        type.setName("тип");
+        type = taskTypeRepository.save(type);
+        for (String name : List.of("отчет 1", "отчет_2", "письмо")) {
+            Task task = new Task(name, "описание", new Date());
+            task.setType(type);
+            taskRepository.save(task);
+        }
+        taskRepository.save(new Task("отчет 3", "описание", new Date()));
+
+        statistics.clear();
+        List<Map<String, Object>> rows = taskRepository.search(new TaskSearch(type.getId(), null, "отчет", null, null,
+                List.of("name", "typeName"), Sort.by(Sort.Order.desc("name")), 10));
+        Assertions.assertEquals(List.of(
+                Map.of("name", "отчет_2", "typeName", "тип"),
+                Map.of("name", "отчет 1", "typeName", "тип")), rows);
+        Assertions.assertEquals(0, statistics.getEntityLoadCount());
+        Assertions.assertEquals(1, statistics.getPrepareStatementCount());
+
+        Assertions.assertEquals(1, taskRepository.search(new TaskSearch(null, null, "отчет_", null, null,
+                List.of("id"), Sort.unsorted(), 10)).size());
+    }
+
+    /**
+     * проверяет план запроса задач на дату: sql, который Hibernate строит для findByDateWithTypesSorted,
+     * должен выбирать диапазоном по индексу idx_task_date_type (миграция V2), а не полным просмотром таблицы.
+     * Текст запроса перехватывает StatementInspector сессии теста, запрос - JPQL из @Query метода репозитория.
+     * На PostgreSQL то же проверяется вручную:
+     * EXPLAIN этого запроса должен показать Index Scan или Bitmap Index Scan по idx_task_date_type
+     *
+     * @throws Exception
+     */
+    @Test
+    void testTasksByDateUsesDateTypeIndex() throws Exception {
+        String jpql = TaskRepository.class.getMethod("findByDateWithTypesSorted", Date.class, Date.class)
+                .getAnnotation(Query.class).value();
+        Date start = Date.from(LocalDate.of(2023, 8, 1).atStartOfDay(ZoneId.systemDefault()).toInstant());
+        Date end = Date.from(LocalDate.of(2023, 8, 2).atStartOfDay(ZoneId.systemDefault()).toInstant());
+
+        List<String> sql = new ArrayList<>();
+        try (Session session = entityManagerFactory.unwrap(SessionFactory.class).withOptions()
+                .statementInspector(statement -> {
+                    sql.add(statement);
+                    return statement;
+                })
+                .openSession()) {
+            session.createQuery(jpql, Task.class)
+                    .setParameter("date_value_start", start)
+                    .setParameter("date_value_end", end)
+                    .getResultList();
+        }
+        Assertions.assertEquals(1, sql.size(), String.valueOf(sql));
+        String plan = String.join("\n", jdbcTemplate.queryForList("EXPLAIN " + sql.get(0), String.class,
+                new Timestamp(start.getTime()), new Timestamp(end.getTime())));
+        Assertions.assertTrue(plan.toUpperCase().contains("IDX_TASK_DATE_TYPE"), plan);
+    }
+
+    /**
+     * заполняет базу задачами с разными типами под одним тегом и считает запросы каждого эндпоинта
+     *
+     * @param size число задач
+     * @return число запросов по каждому эндпоинту
+     * @throws Exception
+     */
+    private Map<String, Long> countStatements(int size) throws Exception {
+        setUp();
+        Tag tag = tagRepository.save(new Tag("тег"));
+        Task first = null;
+        for (int i = 0; i < size; i++) {
+            TaskType type = new TaskType();
+            type.setName("тип" + i);
+            type = taskTypeRepository.save(type);
+            Task task = new Task("имя" + i, "описание" + i, new Date());
+            task.setType(type);
+            task.setTag(tag);
+            task = taskRepository.save(task);
+            if (first == null) {
+                first = task;
+            }
+        }
+        String today = LocalDate.now().toString();
+
+        Map<String, Long> counts = new LinkedHashMap<>();
+        counts.put("getAllTasks", countStatements(get("/api/tasks")));
+        counts.put("getTasksPage", countStatements(get("/api/tasks").param("limit", "1000")));
+        counts.put("getTasksByDate", countStatements(get("/api/tasks/date").param("date", today)));
+        counts.put("getTaskById", countStatements(get("/api/tasks/{id}", first.getId())));
+        counts.put("getAllTags", countStatements(get("/api/tags")));
+        counts.put("getTagsWithTasks", countStatements(get("/api/tags/tasks")));
+        counts.put("getTagsWithTaskCounts", countStatements(get("/api/tags/tasks").param("withCounts", "true")));
+        counts.put("getTagById", countStatements(get("/api/tags/{id}", tag.getId())));
+        return counts;
+    }
+
+    private String etag(RequestBuilder request) throws Exception {
+        return mockMvc.perform(request).andExpect(status().isOk())
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+    }
+
+    private long countStatements(RequestBuilder request) throws Exception {
+        statistics.clear();
+        mockMvc.perform(request).andExpect(status().isOk());
+        return statistics.getPrepareStatementCount();
+    }
+}
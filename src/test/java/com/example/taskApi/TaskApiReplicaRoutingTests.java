@@ -0,0 +1,209 @@
+package com.example.taskApi;
+
+import com.example.taskApi.config.ReplicaLagMonitor;
+import com.example.taskApi.config.ReplicaRoutingDataSource;
+import com.example.taskApi.models.Tag;
+import com.example.taskApi.models.Task;
+import com.example.taskApi.models.TaskType;
+import com.example.taskApi.repository.TagRepository;
+import com.example.taskApi.repository.TaskRepository;
+import com.example.taskApi.repository.TaskTypeRepository;
+import com.example.taskApi.service.TaskAgenda;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.flywaydb.core.Flyway;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.web.servlet.MockMvc;
+
+import javax.sql.DataSource;
+import java.time.LocalDate;
+import java.util.Date;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * тесты маршрутизации чтения на реплику: основная база и реплика - две отдельные H2 в памяти,
+ * репликация изображается копированием строк в тесте
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:primary;MODE=PostgreSQL;DB_CLOSE_DELAY=-1",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+        "taskapi.replica.urls=jdbc:h2:mem:replica;MODE=PostgreSQL;DB_CLOSE_DELAY=-1",
+        "taskapi.replica.lag-query=SELECT seconds FROM replica_lag",
+        "taskapi.replica.lag-check-interval-ms=3600000",
+        "taskapi.sql.mode=off"
+})
+@AutoConfigureMockMvc
+class TaskApiReplicaRoutingTests {
+    private static final String CLIENT = "X-Client-Id";
+
+    @Autowired
+    private TaskRepository taskRepository;
+
+    @Autowired
+    private TaskTypeRepository taskTypeRepository;
+
+    @Autowired
+    private TagRepository tagRepository;
+
+    @Autowired
+    private TaskAgenda taskAgenda;
+
+    @Autowired
+    private ReplicaRoutingDataSource routingDataSource;
+
+    @Autowired
+    private ReplicaLagMonitor lagMonitor;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    private JdbcTemplate replica;
+
+    @BeforeEach
+    void setUp() {
+        DataSource replicaDataSource = routingDataSource.getReplicas().get("replica-0");
+        Flyway.configure().dataSource(replicaDataSource)
+                .locations("classpath:db/migration/common").load().migrate();
+        replica = new JdbcTemplate(replicaDataSource);
+        replica.execute("CREATE TABLE IF NOT EXISTS replica_lag (seconds DOUBLE PRECISION)");
+        replica.update("DELETE FROM replica_lag");
+        replica.update("INSERT INTO replica_lag VALUES (0)");
+        replica.update("DELETE FROM task");
+        taskRepository.deleteAllInBatch();
+        lagMonitor.checkLag();
+    }
+
+    /**
+     * тестирует, что чтение идет в реплику, а запись - в основную базу
+     *
+     * @throws Exception
+     */
+    @Test
+    void testReadsGoToReplica() throws Exception {
+        Assertions.assertEquals(0L, routingDataSource.getLagMillis("replica-0").orElseThrow());
+        Task task = taskRepository.save(new Task("имя", "описание", new Date()));
+
+        mockMvc.perform(get("/api/tasks/{id}", task.getId()).header(CLIENT, "reader"))
+                .andExpect(status().isNotFound());
+
+        replicate(task);
+        mockMvc.perform(get("/api/tasks/{id}", task.getId()).header(CLIENT, "reader"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.name").value("имя"));
+    }
+
+    /**
+     * тестирует, что клиент после изменения читает свои данные из основной базы, а другие - из реплики;
+     * изменение без X-Client-Id никого не отправляет в основную базу
+     *
+     * @throws Exception
+     */
+    @Test
+    void testWriterReadsOwnWrites() throws Exception {
+        String created = mockMvc.perform(post("/api/tasks").header(CLIENT, "writer")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(new Task("имя", "описание", new Date()))))
+                .andExpect(status().isCreated())
+                .andReturn().getResponse().getContentAsString();
+        int id = objectMapper.readValue(created, Task.class).getId();
+
+        mockMvc.perform(get("/api/tasks/{id}", id).header(CLIENT, "writer"))
+                .andExpect(status().isOk());
+        mockMvc.perform(get("/api/tasks/{id}", id).header(CLIENT, "reader"))
+                .andExpect(status().isNotFound());
+
+        created = mockMvc.perform(post("/api/tasks")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(new Task("имя", "описание", new Date()))))
+                .andExpect(status().isCreated())
+                .andReturn().getResponse().getContentAsString();
+        id = objectMapper.readValue(created, Task.class).getId();
+        mockMvc.perform(get("/api/tasks/{id}", id))
+                .andExpect(status().isNotFound());
+    }
+
+    /**
+     * тестирует, что реплика с отставанием больше max-lag или недоступная не получает чтения
+     *
+     * @throws Exception
+     */
+    @Test
+    void testLaggingReplicaIsSkipped() throws Exception {
+        Task task = taskRepository.save(new Task("имя", "описание", new Date()));
+
+        replica.update("UPDATE replica_lag SET seconds = 60");
+        lagMonitor.checkLag();
+        Assertions.assertEquals(60_000L, routingDataSource.getLagMillis("replica-0").orElseThrow());
+        mockMvc.perform(get("/api/tasks/{id}", task.getId()).header(CLIENT, "reader"))
+                .andExpect(status().isOk());
+
+        replica.execute("DROP TABLE replica_lag");
+        lagMonitor.checkLag();
+        Assertions.assertTrue(routingDataSource.getLagMillis("replica-0").isEmpty());
+        mockMvc.perform(get("/api/tasks/{id}", task.getId()).header(CLIENT, "reader"))
+                .andExpect(status().isOk());
+    }
+
+    /**
+     * тестирует, что ETag списка задач и сам список читаются с одной реплики
+     *
+     * @throws Exception
+     */
+    @Test
+    void testListEtagMatchesReplicaData() throws Exception {
+        Task task = taskRepository.save(new Task("имя", "описание", new Date()));
+        replicate(task);
+        replica.update("UPDATE table_version SET version = CASE name WHEN 'task' THEN 42 ELSE 0 END");
+
+        mockMvc.perform(get("/api/tasks").header(CLIENT, "reader"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"42\""))
+                .andExpect(jsonPath("$[0].name").value("имя"));
+        mockMvc.perform(get("/api/tasks").header(CLIENT, "reader").header(HttpHeaders.IF_NONE_MATCH, "\"42\""))
+                .andExpect(status().isNotModified());
+    }
+
+    /**
+     * тестирует, что задачи дня для кэша читаются из основной базы, а не с отстающей реплики
+     *
+     * @throws Exception
+     */
+    @Test
+    void testAgendaLoadsFromPrimary() throws Exception {
+        TaskType type = new TaskType();
+        type.setName("тип");
+        type = taskTypeRepository.save(type);
+        Task task = new Task("имя", "описание", new Date());
+        task.setType(type);
+        task.setTag(tagRepository.save(new Tag("тег")));
+        taskRepository.save(task);
+        taskAgenda.clear();
+
+        mockMvc.perform(get("/api/tasks/date").param("date", LocalDate.now().toString()).header(CLIENT, "reader"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].name").value("имя"));
+        Assertions.assertFalse(ReplicaRoutingDataSource.isPrimaryOnly());
+    }
+
+    private void replicate(Task task) {
+        replica.update("INSERT INTO task (id, name, description, date, updated_at, version) VALUES (?, ?, ?, ?, ?, ?)",
+                task.getId(), task.getName(), task.getDescription(), task.getDate(), new Date(), task.getVersion());
+    }
+}
@@ -0,0 +1,7 @@
+-- H2 counterpart of db/migration/postgresql/V8: statement triggers bumping table_version
+CREATE TRIGGER task_table_version AFTER INSERT, UPDATE, DELETE ON task
+    FOR EACH STATEMENT CALL 'com.example.taskApi.TableVersionTrigger';
+CREATE TRIGGER tag_table_version AFTER INSERT, UPDATE, DELETE ON tag
+    FOR EACH STATEMENT CALL 'com.example.taskApi.TableVersionTrigger';
+CREATE TRIGGER task_type_table_version AFTER INSERT, UPDATE, DELETE ON task_type
+    FOR EACH STATEMENT CALL 'com.example.taskApi.TableVersionTrigger';